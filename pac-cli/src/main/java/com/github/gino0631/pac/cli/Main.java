@@ -0,0 +1,513 @@
+package com.github.gino0631.pac.cli;
+
+import com.github.gino0631.pac.BuildResult;
+import com.github.gino0631.pac.FilePermissions;
+import com.github.gino0631.pac.PackageBuilder;
+import com.github.gino0631.pac.PackagePlan;
+import com.github.gino0631.pac.PackageSidecars;
+import com.github.gino0631.pac.PackageSigner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.security.Provider;
+import java.security.Security;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Command line interface to {@link PackageBuilder}. Arguments are parsed by hand, so that the tool starts quickly,
+ * and does not need reflection (which keeps it buildable as a native image).
+ */
+public final class Main {
+    private static final String PASSPHRASE_VARIABLE = "PAC_SIGN_PASSPHRASE";
+    private static final String USAGE = String.join("\n",
+            "Usage: pac [options] --root DIR --pkgname NAME --pkgver VERSION",
+            "",
+            "Package:",
+            "  -r, --root DIR                 directory containing payload to install",
+            "  -o, --output FILE              package file (default: NAME-VERSION-RELEASE-ARCH.pkg.tar.xz)",
+            "      --pkgname NAME             package name",
+            "      --pkgver VERSION           package version",
+            "      --pkgrel RELEASE           release number (default: 1)",
+            "      --arch ARCH                architecture (default: any)",
+            "      --pkgdesc TEXT             package description",
+            "      --url URL                  URL associated with the software",
+            "      --packager NAME            packager, e.g. 'John Doe <john@example.com>'",
+            "      --license NAME             license (repeatable)",
+            "      --depend PACKAGE           dependency (repeatable)",
+            "      --optdepend PACKAGE        optional dependency (repeatable)",
+            "      --install FILE             install script",
+            "      --symlink NAME=TARGET      additional symbolic link (repeatable)",
+            "      --file-mode GLOB=MODE      octal mode of files matching the glob (repeatable, the last match wins)",
+            "      --dir-mode GLOB=MODE       octal mode of directories matching the glob (repeatable, the last match wins)",
+            "      --owner GLOB=UID:GID       owner of files and directories matching the glob (repeatable, the last match wins)",
+            "",
+            "Build:",
+            "      --compression-preset N     XZ preset, from 0 to 9 (default: 6)",
+            "      --adaptive-compression     compress already compressed files with the fastest preset",
+            "      --entry-order ORDER        PATH or EXTENSION (default: PATH)",
+            "      --block-size BYTES         make the package seekable, and write an index to FILE.idx",
+            "      --pipelined                read, hash and compress files on separate threads",
+            "      --digests LIST             comma separated digests for .MTREE: MD5, SHA256, or NONE (default: MD5,SHA256)",
+            "      --digest-provider NAME     security provider to compute digests with",
+            "      --sign-key-ring FILE       secret key ring to sign the package with (passphrase is read from " + PASSPHRASE_VARIABLE + ")",
+            "      --sign-key-id ID           ID, fingerprint or user ID of the signing key",
+            "      --checksum ALGORITHM       write FILE.sha256 or FILE.md5 (repeatable)",
+            "      --plan                     print the listing of the package contents instead of building it",
+            "  -h, --help                     print this help",
+            "");
+
+    private final PackageBuilder pkgBuilder = new PackageBuilder();
+    private final List<PermissionRule> permissionRules = new ArrayList<>();
+    private final List<String> checksums = new ArrayList<>();
+    private String pkgName;
+    private String pkgVer;
+    private String pkgRel = "1";
+    private String arch = "any";
+    private Path output;
+    private Path signKeyRing;
+    private String signKeyId;
+    private boolean rootSet;
+    private boolean digestsSet;
+    private boolean plan;
+    private boolean help;
+
+    private static final class PermissionRule {
+        private final PathMatcher matcher;
+        private final Integer fileMode;
+        private final Integer directoryMode;
+        private final int[] owner;
+
+        PermissionRule(String glob, Integer fileMode, Integer directoryMode, int[] owner) {
+            this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            this.fileMode = fileMode;
+            this.directoryMode = directoryMode;
+            this.owner = owner;
+        }
+    }
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the tool.
+     *
+     * @return exit code: 0 on success, 1 on errors, 2 on invalid arguments
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Main main = new Main();
+
+        try {
+            main.parse(args);
+
+        } catch (IllegalArgumentException e) {
+            err.println("pac: " + e.getMessage());
+            err.println("Try 'pac --help' for more information.");
+            return 2;
+        }
+
+        if (main.help) {
+            out.print(USAGE);
+            return 0;
+        }
+
+        try {
+            main.execute(out);
+            return 0;
+
+        } catch (IOException | RuntimeException e) {
+            err.println("pac: " + describe(e));
+            return 1;
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            String value = null;
+
+            int eq = option.indexOf('=');
+            if (option.startsWith("--") && (eq > 0)) {
+                value = option.substring(eq + 1);
+                option = option.substring(0, eq);
+            }
+
+            switch (option) {
+                case "-h":
+                case "--help":
+                    help = true;
+                    return;
+
+                case "--adaptive-compression":
+                    pkgBuilder.setAdaptiveCompression(true);
+                    continue;
+
+                case "--pipelined":
+                    pkgBuilder.setPipelined(true);
+                    continue;
+
+                case "--plan":
+                    plan = true;
+                    continue;
+
+                default:
+                    break;
+            }
+
+            if (value == null) {
+                if (!option.startsWith("-")) {
+                    throw new IllegalArgumentException(MessageFormat.format("unexpected argument ''{0}''", option));
+                }
+                if (++i == args.length) {
+                    throw new IllegalArgumentException(MessageFormat.format("option ''{0}'' requires a value", option));
+                }
+                value = args[i];
+            }
+
+            parseOption(option, value);
+        }
+
+        if (!rootSet) {
+            throw new IllegalArgumentException("option '--root' is required");
+        }
+        if (pkgName == null) {
+            throw new IllegalArgumentException("option '--pkgname' is required");
+        }
+        if (pkgVer == null) {
+            throw new IllegalArgumentException("option '--pkgver' is required");
+        }
+    }
+
+    private void parseOption(String option, String value) {
+        switch (option) {
+            case "-r":
+            case "--root":
+                pkgBuilder.setRootDir(Paths.get(value));
+                rootSet = true;
+                break;
+
+            case "-o":
+            case "--output":
+                output = Paths.get(value);
+                break;
+
+            case "--pkgname":
+                pkgName = value;
+                break;
+
+            case "--pkgver":
+                pkgVer = value;
+                break;
+
+            case "--pkgrel":
+                pkgRel = value;
+                break;
+
+            case "--arch":
+                arch = value;
+                break;
+
+            case "--pkgdesc":
+                pkgBuilder.setPkgDesc(value);
+                break;
+
+            case "--url":
+                pkgBuilder.setUrl(value);
+                break;
+
+            case "--packager":
+                pkgBuilder.setPackager(value);
+                break;
+
+            case "--license":
+                pkgBuilder.addLicense(value);
+                break;
+
+            case "--depend":
+                pkgBuilder.addDepend(value);
+                break;
+
+            case "--optdepend":
+                pkgBuilder.addOptDepend(value);
+                break;
+
+            case "--install":
+                pkgBuilder.setInstallScript(Paths.get(value));
+                break;
+
+            case "--symlink": {
+                String[] pair = split(option, value, '=');
+                pkgBuilder.addSymlink(pair[0], pair[1]);
+                break;
+            }
+
+            case "--file-mode": {
+                String[] pair = split(option, value, '=');
+                permissionRules.add(new PermissionRule(pair[0], parseMode(option, pair[1]), null, null));
+                break;
+            }
+
+            case "--dir-mode": {
+                String[] pair = split(option, value, '=');
+                permissionRules.add(new PermissionRule(pair[0], null, parseMode(option, pair[1]), null));
+                break;
+            }
+
+            case "--owner": {
+                String[] pair = split(option, value, '=');
+                String[] ids = split(option, pair[1], ':');
+                permissionRules.add(new PermissionRule(pair[0], null, null,
+                        new int[]{parseInt(option, ids[0], 10), parseInt(option, ids[1], 10)}));
+                break;
+            }
+
+            case "--compression-preset":
+                pkgBuilder.setCompressionPreset(parseInt(option, value, 10));
+                break;
+
+            case "--entry-order":
+                pkgBuilder.setEntryOrder(parseEnum(option, PackageBuilder.EntryOrder.class, value));
+                break;
+
+            case "--block-size":
+                pkgBuilder.setBlockSize(parseLong(option, value));
+                break;
+
+            case "--digests": {
+                Set<PackageBuilder.Digest> digests = EnumSet.noneOf(PackageBuilder.Digest.class);
+                if (!value.equalsIgnoreCase("NONE")) {
+                    for (String digest : value.split(",")) {
+                        digests.add(parseEnum(option, PackageBuilder.Digest.class, digest.trim()));
+                    }
+                }
+                pkgBuilder.setDigests(digests);
+                digestsSet = true;
+                break;
+            }
+
+            case "--digest-provider": {
+                Provider provider = Security.getProvider(value);
+                if (provider == null) {
+                    throw new IllegalArgumentException(MessageFormat.format("security provider {0} not found", value));
+                }
+                pkgBuilder.setDigestProvider(provider);
+                break;
+            }
+
+            case "--sign-key-ring":
+                signKeyRing = Paths.get(value);
+                break;
+
+            case "--sign-key-id":
+                signKeyId = value;
+                break;
+
+            case "--checksum":
+                if (!PackageSidecars.isSupportedChecksum(value)) {
+                    throw new IllegalArgumentException(MessageFormat.format("unsupported checksum algorithm ''{0}''", value));
+                }
+                checksums.add(value);
+                break;
+
+            default:
+                throw new IllegalArgumentException(MessageFormat.format("unknown option ''{0}''", option));
+        }
+    }
+
+    private void execute(PrintStream out) throws IOException {
+        pkgBuilder.setPkgName(pkgName)
+                .setPkgVer(pkgVer)
+                .setPkgRel(pkgRel)
+                .setArch(arch);
+
+        if (!permissionRules.isEmpty()) {
+            pkgBuilder.setPermissionSupplier(this::getPermissions);
+        }
+
+        if (plan) {
+            if (!digestsSet) {
+                pkgBuilder.setDigests(EnumSet.noneOf(PackageBuilder.Digest.class));
+            }
+
+            PackagePlan packagePlan = pkgBuilder.plan();
+            Writer wr = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            packagePlan.writeListing(wr);
+            wr.flush();
+            return;
+        }
+
+        if (signKeyRing != null) {
+            String passphrase = System.getenv(PASSPHRASE_VARIABLE);
+            try {
+                pkgBuilder.setSigner(PackageSigner.fromKeyRing(signKeyRing, signKeyId,
+                        (passphrase != null) ? passphrase.toCharArray() : null));
+
+            } catch (FileSystemException e) {
+                throw new IOException(MessageFormat.format("cannot read key ring {0}: {1}", signKeyRing, getReason(e)), e);
+            }
+        }
+
+        if (output == null) {
+            output = Paths.get(pkgName + "-" + pkgVer + "-" + pkgRel + "-" + arch + ".pkg.tar.xz");
+        }
+
+        writePackage(output);
+    }
+
+    private void writePackage(Path outputPath) throws IOException {
+        boolean succeeded = false;
+
+        try {
+            OutputStream outputStream;
+            try {
+                outputStream = Files.newOutputStream(outputPath);
+
+            } catch (FileSystemException e) {
+                throw new IOException(MessageFormat.format("cannot write package {0}: {1}", outputPath, getReason(e)), e);
+            }
+
+            BuildResult result;
+            try (OutputStream os = outputStream) {
+                result = pkgBuilder.build(os);
+            }
+
+            PackageSidecars.write(outputPath, result, checksums);
+            succeeded = true;
+
+        } finally {
+            if (!succeeded) {
+                Files.deleteIfExists(outputPath);
+            }
+        }
+    }
+
+    private FilePermissions getPermissions(String name, boolean isDirectory) {
+        int mode = isDirectory ? FilePermissions.DEFAULT_DIRECTORY_MODE : FilePermissions.DEFAULT_FILE_MODE;
+        int uid = FilePermissions.DEFAULT_UID;
+        int gid = FilePermissions.DEFAULT_GID;
+        Path path = Paths.get(name);
+
+        for (PermissionRule rule : permissionRules) {
+            if (rule.matcher.matches(path)) {
+                Integer ruleMode = isDirectory ? rule.directoryMode : rule.fileMode;
+                if (ruleMode != null) {
+                    mode = ruleMode;
+                }
+                if (rule.owner != null) {
+                    uid = rule.owner[0];
+                    gid = rule.owner[1];
+                }
+            }
+        }
+
+        return new FilePermissions(mode, uid, gid);
+    }
+
+    /**
+     * Describes an error, so that it makes sense without a stack trace (messages of some exceptions are just file names).
+     */
+    static String describe(Exception e) {
+        if (e instanceof FileSystemException) {
+            FileSystemException fse = (FileSystemException) e;
+            return (fse.getFile() != null) ? fse.getFile() + ": " + getReason(fse) : getReason(fse);
+        }
+
+        String message = e.getMessage();
+        if ((message == null) || message.isEmpty()) {
+            return e.getClass().getName();
+        }
+
+        // Plain exceptions carry messages meant for the user; for the others, the type tells what happened
+        if ((e.getClass() == IOException.class) || (e instanceof IllegalArgumentException) || (e instanceof IllegalStateException)) {
+            return message;
+        }
+
+        return e.getClass().getSimpleName() + ": " + message;
+    }
+
+    private static String getReason(FileSystemException e) {
+        if (e instanceof NoSuchFileException) {
+            return "no such file or directory";
+
+        } else if (e instanceof AccessDeniedException) {
+            return "permission denied";
+
+        } else if (e instanceof FileAlreadyExistsException) {
+            return "file already exists";
+
+        } else if (e instanceof NotDirectoryException) {
+            return "not a directory";
+
+        } else {
+            return (e.getReason() != null) ? e.getReason() : e.getClass().getSimpleName();
+        }
+    }
+
+    private static String[] split(String option, String value, char separator) {
+        int i = value.indexOf(separator);
+        if (i <= 0) {
+            throw new IllegalArgumentException(MessageFormat.format("invalid value ''{0}'' of option ''{1}''", value, option));
+        }
+
+        return new String[]{value.substring(0, i), value.substring(i + 1)};
+    }
+
+    private static int parseMode(String option, String value) {
+        int mode = parseInt(option, value, 8);
+        if ((mode & ~FilePermissions.MODE_MASK) != 0) {
+            throw new IllegalArgumentException(MessageFormat.format("invalid value ''{0}'' of option ''{1}''", value, option));
+        }
+
+        return mode;
+    }
+
+    private static int parseInt(String option, String value, int radix) {
+        try {
+            return Integer.parseInt(value, radix);
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(MessageFormat.format("invalid value ''{0}'' of option ''{1}''", value, option));
+        }
+    }
+
+    private static long parseLong(String option, String value) {
+        try {
+            return Long.parseLong(value);
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(MessageFormat.format("invalid value ''{0}'' of option ''{1}''", value, option));
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(String option, Class<E> type, String value) {
+        for (E e : type.getEnumConstants()) {
+            if (e.name().equals(value.toUpperCase(Locale.ROOT))) {
+                return e;
+            }
+        }
+
+        throw new IllegalArgumentException(MessageFormat.format("invalid value ''{0}'' of option ''{1}''", value, option));
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.gino0631.pac.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MainTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    public void testBuild() throws Exception {
+        Path root = createRoot();
+        Path output = folder.getRoot().toPath().resolve("test-1.0-1-any.pkg.tar.xz");
+
+        assertEquals(0, run("--root", root.toString(), "--pkgname", "test", "--pkgver=1.0", "-o", output.toString(),
+                "--block-size", "65536", "--checksum", "sha256"));
+
+        assertTrue(Files.size(output) > 0);
+        assertTrue(Files.exists(output.resolveSibling(output.getFileName() + ".idx")));
+        String checksum = new String(Files.readAllBytes(output.resolveSibling(output.getFileName() + ".sha256")), StandardCharsets.UTF_8);
+        assertTrue(checksum.endsWith("  test-1.0-1-any.pkg.tar.xz\n"));
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        Path root = createRoot();
+
+        assertEquals(0, run("-r", root.toString(), "--pkgname", "test", "--pkgver", "1.0", "--plan",
+                "--dir-mode", "**=0750", "--file-mode", "usr/bin/*=0755", "--owner", "usr/bin/*=1000:100"));
+
+        assertEquals("dir\t0750\t0\t0\t0\t-\tusr/\n" +
+                        "dir\t0750\t0\t0\t0\t-\tusr/bin/\n" +
+                        "file\t0755\t1000\t100\t5\t-\tusr/bin/tool\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInvalidArguments() throws Exception {
+        Path root = createRoot();
+
+        assertEquals(2, run("--root", root.toString(), "--pkgname", "test"));
+        assertEquals(2, run("--root", root.toString(), "--pkgname", "test", "--pkgver", "1.0", "--file-mode", "*=999"));
+        assertEquals(2, run("--unknown"));
+        assertEquals(0, run("--help"));
+        assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).startsWith("Usage: pac"));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Path root = createRoot();
+        Path output = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+
+        assertEquals(1, run("--root", root.toString(), "--pkgname", "test", "--pkgver", "1-0", "-o", output.toString()));
+        assertFalse(Files.exists(output));
+
+        err.reset();
+        Path keyRing = folder.getRoot().toPath().resolve("missing.gpg");
+        assertEquals(1, run("--root", root.toString(), "--pkgname", "test", "--pkgver", "1.0", "-o", output.toString(),
+                "--sign-key-ring", keyRing.toString()));
+        assertEquals("pac: cannot read key ring " + keyRing + ": no such file or directory\n",
+                new String(err.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private Path createRoot() throws Exception {
+        Path root = folder.newFolder().toPath();
+        Path bin = Files.createDirectories(root.resolve("usr/bin"));
+        Files.write(bin.resolve("tool"), "hello".getBytes(StandardCharsets.UTF_8));
+        return root;
+    }
+
+    private int run(String... args) {
+        return Main.run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.gino0631.pac;
+
+/**
+ * Information about a package collected while it was being written.
+ */
+public final class BuildResult {
+    private final long size;
+    private final String md5digest;
+    private final String sha256digest;
+    private final byte[] signature;
+    private final PackageIndex index;
+
+    BuildResult(long size, String md5digest, String sha256digest, byte[] signature, PackageIndex index) {
+        this.size = size;
+        this.md5digest = md5digest;
+        this.sha256digest = sha256digest;
+        this.signature = signature;
+        this.index = index;
+    }
+
+    /**
+     * Returns the size of the package.
+     *
+     * @return number of bytes written
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the MD5 checksum of the package.
+     *
+     * @return lowercase hexadecimal digest
+     */
+    public String getMd5Digest() {
+        return md5digest;
+    }
+
+    /**
+     * Returns the SHA-256 checksum of the package.
+     *
+     * @return lowercase hexadecimal digest
+     */
+    public String getSha256Digest() {
+        return sha256digest;
+    }
+
+    /**
+     * Returns the detached OpenPGP signature of the package.
+     *
+     * @return binary signature, or {@code null} if the package was not signed
+     */
+    public byte[] getSignature() {
+        return signature;
+    }
+
+    /**
+     * Returns the index of entries within the package, which allows to read them with {@link SeekablePackageReader}.
+     *
+     * @return index, or {@code null} if the package was built without a block size set
+     */
+    public PackageIndex getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.gino0631.pac;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Computes the size and checksums of the data passing through it, so that the written package does not need to be read again.
+ */
+final class ChecksumOutputStream extends FilterOutputStream {
+    private final MessageDigest md5 = Digester.getMessageDigest(PackageBuilder.Digest.MD5, null);
+    private final MessageDigest sha256 = Digester.getMessageDigest(PackageBuilder.Digest.SHA256, null);
+    private long size;
+
+    ChecksumOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        md5.update((byte) b);
+        sha256.update((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        md5.update(b, off, len);
+        sha256.update(b, off, len);
+        size += len;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    String getMd5Digest() {
+        return Digester.toHexString(md5.digest());
+    }
+
+    String getSha256Digest() {
+        return Digester.toHexString(sha256.digest());
+    }
+}
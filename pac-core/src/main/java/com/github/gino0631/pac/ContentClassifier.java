@@ -0,0 +1,68 @@
+package com.github.gino0631.pac;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tells apart files which are not worth compressing (because they are compressed already),
+ * either by their extension, or by the entropy of a sample of their content.
+ */
+final class ContentClassifier {
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "7z", "apk", "br", "bz2", "ear", "gif", "gz", "jar", "jpeg", "jpg", "lz", "lz4", "lzma", "mp3", "mp4",
+            "ogg", "png", "rar", "tbz2", "tgz", "txz", "war", "webm", "webp", "woff", "woff2", "xz", "z", "zip", "zst"));
+
+    private static final int MIN_SAMPLE_SIZE = 4096;
+    private static final int MAX_SAMPLE_SIZE = 65536;
+    private static final double MAX_COMPRESSIBLE_ENTROPY = 7.5;    // bits per byte
+
+    private ContentClassifier() {
+    }
+
+    static boolean isCompressible(Path path) throws IOException {
+        if (COMPRESSED_EXTENSIONS.contains(getExtension(path.getFileName().toString()))) {
+            return false;
+        }
+
+        byte[] sample = new byte[MAX_SAMPLE_SIZE];
+        int length = 0;
+
+        try (InputStream is = Files.newInputStream(path)) {
+            for (int n; (length < sample.length) && ((n = is.read(sample, length, sample.length - length)) > 0); ) {
+                length += n;
+            }
+        }
+
+        return (length < MIN_SAMPLE_SIZE) || (getEntropy(sample, length) <= MAX_COMPRESSIBLE_ENTROPY);
+    }
+
+    static String getExtension(String name) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+
+        return ((dot > slash + 1) && (dot < name.length() - 1)) ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static double getEntropy(byte[] data, int length) {
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[data[i] & 0xff]++;
+        }
+
+        double entropy = 0;
+        for (int count : counts) {
+            if (count != 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+
+        return entropy / Math.log(2);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.gino0631.pac;
+
+import com.github.gino0631.common.io.InputStreamSupplier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.Set;
+
+/**
+ * Computes the configured set of digests of file contents, reading each file once into a shared buffer.
+ * Instances are not thread-safe.
+ */
+final class Digester {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final char[] HEX_CODE = "0123456789abcdef".toCharArray();
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final MessageDigest md5;
+    private final MessageDigest sha256;
+
+    Digester(Set<PackageBuilder.Digest> digests, Provider provider) {
+        md5 = digests.contains(PackageBuilder.Digest.MD5) ? getMessageDigest(PackageBuilder.Digest.MD5, provider) : null;
+        sha256 = digests.contains(PackageBuilder.Digest.SHA256) ? getMessageDigest(PackageBuilder.Digest.SHA256, provider) : null;
+    }
+
+    /**
+     * Computes digests of the stream contents.
+     *
+     * @return MD5 and SHA-256 digests as hexadecimal strings ({@code null} for the ones not configured)
+     */
+    String[] digest(InputStreamSupplier streamSupplier) throws IOException {
+        if ((md5 != null) || (sha256 != null)) {
+            try (InputStream is = streamSupplier.newInputStream()) {
+                for (int n; (n = is.read(buffer)) >= 0; ) {
+                    update(buffer, 0, n);
+                }
+            }
+        }
+
+        return finish();
+    }
+
+    /**
+     * Updates digests with a chunk of contents, for the cases when contents are read elsewhere.
+     */
+    void update(byte[] b, int off, int len) {
+        if (md5 != null) {
+            md5.update(b, off, len);
+        }
+        if (sha256 != null) {
+            sha256.update(b, off, len);
+        }
+    }
+
+    /**
+     * Completes digests of the contents passed to {@link #update(byte[], int, int)}, resetting them for the next contents.
+     *
+     * @return MD5 and SHA-256 digests as hexadecimal strings ({@code null} for the ones not configured)
+     */
+    String[] finish() {
+        return new String[]{
+                (md5 != null) ? toHexString(md5.digest()) : null,
+                (sha256 != null) ? toHexString(sha256.digest()) : null
+        };
+    }
+
+    static MessageDigest getMessageDigest(PackageBuilder.Digest digest, Provider provider) {
+        try {
+            return (provider != null)
+                    ? MessageDigest.getInstance(digest.getAlgorithm(), provider)
+                    : MessageDigest.getInstance(digest.getAlgorithm());
+
+        } catch (NoSuchAlgorithmException e) {
+            // Providers are checked when configured, and every Java platform implementation supports both algorithms
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHexString(byte[] data) {
+        StringBuilder r = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            r.append(HEX_CODE[(b >> 4) & 0xf]);
+            r.append(HEX_CODE[(b & 0xf)]);
+        }
+
+        return r.toString();
+    }
+}
@@ -0,0 +1,233 @@
+package com.github.gino0631.pac;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.BasicArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Builds the same package repeatedly, keeping entry metadata and compressed blocks of payload in memory between builds,
+ * so that only changed files are hashed, and only blocks containing them are compressed again.
+ * <p>
+ * The package is written as a sequence of concatenated XZ streams (one per block of entries), which is a valid XZ file.
+ * Block boundaries are chosen by hashes of entry names, so that adding or removing a file affects only its neighbours.
+ * If a block size is set (see {@link PackageBuilder#setBlockSize(long)}), it limits the uncompressed size of blocks,
+ * and an index of entries is returned, as for a normal build. Pipelined building does not apply, as only changed
+ * files are read.
+ */
+public final class IncrementalPackageBuilder {
+    private static final int MIN_BLOCK_SIZE = 1 << 20;
+    private static final int MAX_BLOCK_SIZE = 8 << 20;
+    private static final int BOUNDARY_MASK = 0x7;
+    private static final int TAR_EOF_SIZE = 1024;
+
+    private final PackageBuilder packageBuilder;
+    private final ArrayCache arrayCache = BasicArrayCache.getInstance();
+    private Map<String, PackageEntry> entries = Collections.emptyMap();
+    private Map<PackageEntry, Block> blocks = Collections.emptyMap();
+    private byte[] tarEof;
+    private int changedEntryCount;
+    private int compressedBlockCount;
+
+    private static final class Block {
+        private final List<PackageEntry> entries;
+        private final byte[] data;
+        private final long tarSize;
+        private final PackageIndex index;
+
+        Block(List<PackageEntry> entries, byte[] data, long tarSize, PackageIndex index) {
+            this.entries = entries;
+            this.data = data;
+            this.tarSize = tarSize;
+            this.index = index;
+        }
+
+        boolean contains(List<PackageEntry> entries) {
+            if (entries.size() != this.entries.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i) != this.entries.get(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    public IncrementalPackageBuilder(PackageBuilder packageBuilder) {
+        this.packageBuilder = packageBuilder;
+    }
+
+    /**
+     * Builds the package, reusing the results of the previous build where possible.
+     *
+     * @param outputStream stream to write the package to
+     * @return build result
+     * @throws IOException if an I/O error occurs
+     */
+    public BuildResult build(OutputStream outputStream) throws IOException {
+        packageBuilder.validate();
+
+        Digester digester = packageBuilder.newDigester();
+        NavigableMap<String, PackageEntry> newEntries = packageBuilder.collectEntries(entries, digester);
+        changedEntryCount = 0;
+        for (PackageEntry entry : newEntries.values()) {
+            if (entries.get(entry.getName()) != entry) {
+                changedEntryCount++;
+            }
+        }
+        entries = newEntries;
+
+        packageBuilder.addMetadata(newEntries, digester);
+        List<PackageEntry> orderedEntries = packageBuilder.orderEntries(newEntries.values());
+
+        // Split into blocks, reusing compressed data of the blocks which consist of the same entries
+        List<Block> data = new ArrayList<>();
+        Map<PackageEntry, Block> newBlocks = new IdentityHashMap<>();
+        compressedBlockCount = 0;
+
+        List<PackageEntry> metadata = new ArrayList<>();
+        List<PackageEntry> block = new ArrayList<>();
+        long blockSize = 0;
+
+        for (PackageEntry entry : orderedEntries) {
+            if (PackageBuilder.isMetadata(entry)) {
+                metadata.add(entry);
+                continue;
+            }
+
+            if (!block.isEmpty() && isBoundary(entry, blockSize, block.get(block.size() - 1))) {
+                data.add(getBlock(block, newBlocks));
+                block = new ArrayList<>();
+                blockSize = 0;
+            }
+
+            block.add(entry);
+            blockSize += entry.getSize();
+        }
+
+        if (!block.isEmpty()) {
+            data.add(getBlock(block, newBlocks));
+        }
+
+        blocks = newBlocks;
+
+        // Metadata changes on every build, and is small enough to be compressed every time
+        data.add(0, compress(metadata, packageBuilder.getCompressionPreset()));
+
+        // Locations of entries within blocks are shifted by the locations of the blocks
+        PackageIndex index = null;
+        if (packageBuilder.getBlockSize() > 0) {
+            index = new PackageIndex();
+            long blockOffset = 0;
+            long blockPosition = 0;
+            for (Block b : data) {
+                index.addAll(b.index, blockOffset, blockPosition);
+                blockOffset += b.data.length;
+                blockPosition += b.tarSize;
+            }
+        }
+
+        if (tarEof == null) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            try (XZOutputStream xz = new XZOutputStream(os, new LZMA2Options(LZMA2Options.PRESET_MIN), arrayCache)) {
+                xz.write(new byte[TAR_EOF_SIZE]);
+            }
+            tarEof = os.toByteArray();
+        }
+        return packageBuilder.write(outputStream, index, os -> {
+            for (Block b : data) {
+                os.write(b.data);
+            }
+            os.write(tarEof);
+        });
+    }
+
+    /**
+     * Returns the number of entries which were created or changed since the previous build.
+     *
+     * @return number of new or changed entries
+     */
+    public int getChangedEntryCount() {
+        return changedEntryCount;
+    }
+
+    /**
+     * Returns the number of blocks compressed during the last build.
+     *
+     * @return number of compressed blocks
+     */
+    public int getCompressedBlockCount() {
+        return compressedBlockCount;
+    }
+
+    /**
+     * Returns the number of blocks of payload in the package.
+     *
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    private boolean isBoundary(PackageEntry entry, long blockSize, PackageEntry previous) throws IOException {
+        if (packageBuilder.isAdaptiveCompression() && (entry.isCompressible() != previous.isCompressible())) {
+            return true;
+        }
+
+        long maxBlockSize = (packageBuilder.getBlockSize() > 0) ? packageBuilder.getBlockSize() : MAX_BLOCK_SIZE;
+        return (blockSize >= maxBlockSize)
+                || ((blockSize >= Math.min(MIN_BLOCK_SIZE, maxBlockSize / 2)) && ((entry.getName().hashCode() & BOUNDARY_MASK) == 0));
+    }
+
+    private Block getBlock(List<PackageEntry> blockEntries, Map<PackageEntry, Block> newBlocks) throws IOException {
+        Block block = blocks.get(blockEntries.get(0));
+
+        if ((block == null) || !block.contains(blockEntries)) {
+            boolean lowEffort = packageBuilder.isAdaptiveCompression() && !blockEntries.get(0).isCompressible();
+            block = compress(blockEntries, lowEffort ? LZMA2Options.PRESET_MIN : packageBuilder.getCompressionPreset());
+            compressedBlockCount++;
+        }
+
+        newBlocks.put(blockEntries.get(0), block);
+
+        return block;
+    }
+
+    /**
+     * Compresses entries into a stream of their own, indexing them relative to the stream.
+     */
+    private Block compress(List<PackageEntry> blockEntries, int preset) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        PackageIndex index = new PackageIndex();
+        long tarSize;
+
+        try (XZOutputStream xz = new XZOutputStream(os, new LZMA2Options(preset), arrayCache)) {
+            // The archive is not finished here, as its end is written separately; tar records are passed through
+            // as soon as an entry is closed, so nothing is left buffered
+            TarArchiveOutputStream tar = new TarArchiveOutputStream(xz);
+            for (PackageEntry entry : blockEntries) {
+                entry.writeTo(tar);
+                index.add(new PackageIndex.Entry(entry.getName(), PackageBuilder.XZ_STREAM_HEADER_SIZE, 0,
+                        tar.getBytesWritten() - PackageBuilder.getPaddedSize(entry.getSize()), entry.getSize()));
+            }
+            tarSize = tar.getBytesWritten();
+        }
+
+        return new Block(blockEntries, os.toByteArray(), tarSize, index);
+    }
+}
@@ -0,0 +1,442 @@
+package com.github.gino0631.pac;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads mtree specifications, such as the ones produced by {@link MtreeWriter}, entry by entry.
+ * Lines are parsed as bytes from a reusable buffer; {@code .MTREE} files of packages need to be wrapped
+ * in a {@link java.util.zip.GZIPInputStream} first.
+ */
+final class MtreeReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] SET = bytes("/set");
+    private static final byte[] UNSET = bytes("/unset");
+    private static final byte[] TYPE = bytes("type");
+    private static final byte[] UID = bytes("uid");
+    private static final byte[] GID = bytes("gid");
+    private static final byte[] MODE = bytes("mode");
+    private static final byte[] SIZE = bytes("size");
+    private static final byte[] TIME = bytes("time");
+    private static final byte[] LINK = bytes("link");
+    private static final byte[] MD5DIGEST = bytes("md5digest");
+    private static final byte[] SHA256DIGEST = bytes("sha256digest");
+    private static final byte[] ALL = bytes("all");
+    private static final MtreeWriter.FileType[] FILE_TYPES = MtreeWriter.FileType.values();
+
+    private final InputStream inputStream;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int bufPos;
+    private int bufEnd;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int lineNumber;
+
+    private final Deque<String> dirs = new ArrayDeque<>();
+    private final Attributes defaults = new Attributes();
+    private final Attributes current = new Attributes();
+
+    /**
+     * Entry read from an mtree specification.
+     */
+    static final class Entry {
+        private final String name;
+        private final MtreeWriter.FileType fileType;
+        private final long size;
+        private final Instant lastModified;
+        private final int mode;
+        private final long uid;
+        private final long gid;
+        private final String link;
+        private final String md5digest;
+        private final String sha256digest;
+
+        private Entry(String name, Attributes a) {
+            this.name = name;
+            this.fileType = (a.fileType != null) ? a.fileType : MtreeWriter.FileType.FILE;
+            this.size = a.size;
+            this.lastModified = a.lastModified;
+            this.mode = a.mode;
+            this.uid = a.uid;
+            this.gid = a.gid;
+            this.link = a.link;
+            this.md5digest = a.md5digest;
+            this.sha256digest = a.sha256digest;
+        }
+
+        /**
+         * Returns the path of the entry, relative to the root and without the leading {@code ./}.
+         */
+        String getName() {
+            return name;
+        }
+
+        MtreeWriter.FileType getFileType() {
+            return fileType;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        Instant getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Returns permission bits of the entry, or {@code -1} if they were not specified.
+         */
+        int getMode() {
+            return mode;
+        }
+
+        long getUserId() {
+            return uid;
+        }
+
+        long getGroupId() {
+            return gid;
+        }
+
+        String getLink() {
+            return link;
+        }
+
+        String getMd5Digest() {
+            return md5digest;
+        }
+
+        String getSha256Digest() {
+            return sha256digest;
+        }
+    }
+
+    private static final class Attributes {
+        MtreeWriter.FileType fileType;
+        long size;
+        Instant lastModified;
+        int mode = -1;
+        long uid;
+        long gid;
+        String link;
+        String md5digest;
+        String sha256digest;
+
+        void copyFrom(Attributes a) {
+            fileType = a.fileType;
+            size = a.size;
+            lastModified = a.lastModified;
+            mode = a.mode;
+            uid = a.uid;
+            gid = a.gid;
+            link = a.link;
+            md5digest = a.md5digest;
+            sha256digest = a.sha256digest;
+        }
+    }
+
+    MtreeReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Reads the next entry.
+     *
+     * @return entry, or {@code null} if the end of the specification has been reached
+     * @throws IOException if the specification cannot be read or is malformed
+     */
+    Entry readEntry() throws IOException {
+        while (readLine()) {
+            int start = skipBlanks(0);
+            if ((start == lineLength) || (line[start] == '#')) {
+                continue;
+            }
+
+            int end = tokenEnd(start);
+
+            if (equals(start, end, SET)) {
+                parseKeywords(end, defaults, false);
+
+            } else if (equals(start, end, UNSET)) {
+                parseKeywords(end, defaults, true);
+
+            } else {
+                String path = unescape(start, end);
+                current.copyFrom(defaults);
+                parseKeywords(end, current, false);
+
+                if (path.indexOf('/') >= 0) {
+                    return new Entry(normalize(path), current);
+
+                } else if (path.equals("..")) {
+                    dirs.pollLast();
+
+                } else if (path.equals(".")) {
+                    dirs.clear();   // the root itself, which is not reported as an entry
+
+                } else {
+                    String name = relativeName(path);
+                    if (current.fileType == MtreeWriter.FileType.DIR) {
+                        dirs.addLast(path);
+                    }
+
+                    return new Entry(name, current);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void parseKeywords(int pos, Attributes a, boolean unset) throws IOException {
+        for (pos = skipBlanks(pos); pos < lineLength; pos = skipBlanks(pos)) {
+            int end = tokenEnd(pos);
+            int eq = indexOf('=', pos, end);
+            int keyEnd = (eq >= 0) ? eq : end;
+
+            if (unset) {
+                if (equals(pos, keyEnd, ALL)) {
+                    a.copyFrom(new Attributes());
+                } else {
+                    applyKeyword(a, pos, keyEnd, -1, -1);
+                }
+
+            } else if (eq >= 0) {
+                applyKeyword(a, pos, keyEnd, eq + 1, end);
+            }
+
+            pos = end;
+        }
+    }
+
+    private void applyKeyword(Attributes a, int keyStart, int keyEnd, int valueStart, int valueEnd) throws IOException {
+        boolean unset = (valueStart < 0);
+
+        if (equals(keyStart, keyEnd, TYPE)) {
+            a.fileType = unset ? null : parseFileType(valueStart, valueEnd);
+
+        } else if (equals(keyStart, keyEnd, UID)) {
+            a.uid = unset ? 0 : parseNumber(valueStart, valueEnd, 10);
+
+        } else if (equals(keyStart, keyEnd, GID)) {
+            a.gid = unset ? 0 : parseNumber(valueStart, valueEnd, 10);
+
+        } else if (equals(keyStart, keyEnd, MODE)) {
+            a.mode = unset ? -1 : (int) parseNumber(valueStart, valueEnd, 8);
+
+        } else if (equals(keyStart, keyEnd, SIZE)) {
+            a.size = unset ? 0 : parseNumber(valueStart, valueEnd, 10);
+
+        } else if (equals(keyStart, keyEnd, TIME)) {
+            a.lastModified = unset ? null : parseTime(valueStart, valueEnd);
+
+        } else if (equals(keyStart, keyEnd, LINK)) {
+            a.link = unset ? null : unescape(valueStart, valueEnd);
+
+        } else if (equals(keyStart, keyEnd, MD5DIGEST)) {
+            a.md5digest = unset ? null : new String(line, valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII);
+
+        } else if (equals(keyStart, keyEnd, SHA256DIGEST)) {
+            a.sha256digest = unset ? null : new String(line, valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII);
+        }
+    }
+
+    private MtreeWriter.FileType parseFileType(int start, int end) throws IOException {
+        for (MtreeWriter.FileType fileType : FILE_TYPES) {
+            if (equals(start, end, fileType.getCodeBytes())) {
+                return fileType;
+            }
+        }
+
+        throw malformed("Unknown file type");
+    }
+
+    private Instant parseTime(int start, int end) throws IOException {
+        int dot = indexOf('.', start, end);
+        if (dot < 0) {
+            return Instant.ofEpochSecond(parseNumber(start, end, 10));
+        }
+
+        return Instant.ofEpochSecond(parseNumber(start, dot, 10), parseNumber(dot + 1, end, 10));
+    }
+
+    private long parseNumber(int start, int end, int radix) throws IOException {
+        boolean negative = (start < end) && (line[start] == '-');
+        int i = negative ? start + 1 : start;
+
+        if (i == end) {
+            throw malformed("Missing number");
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if ((digit < 0) || (digit >= radix)) {
+                throw malformed("Invalid number");
+            }
+            value = value * radix + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    private String unescape(int start, int end) throws IOException {
+        byte[] out = new byte[end - start];
+        int length = 0;
+
+        for (int i = start; i < end; i++) {
+            byte b = line[i];
+
+            if (b == '\\') {
+                if ((i + 3 < end) && isOctalDigit(line[i + 1]) && isOctalDigit(line[i + 2]) && isOctalDigit(line[i + 3])) {
+                    b = (byte) (((line[i + 1] - '0') << 6) | ((line[i + 2] - '0') << 3) | (line[i + 3] - '0'));
+                    i += 3;
+
+                } else if (i + 1 < end) {
+                    b = line[++i];
+
+                } else {
+                    throw malformed("Invalid escape sequence");
+                }
+            }
+
+            out[length++] = b;
+        }
+
+        return new String(out, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private String relativeName(String name) {
+        StringBuilder sb = new StringBuilder();
+        for (String dir : dirs) {
+            sb.append(dir).append('/');
+        }
+
+        return sb.append(name).toString();
+    }
+
+    private static String normalize(String path) {
+        int start = path.startsWith("./") ? 2 : 0;
+        int end = path.length();
+        while ((end > start) && (path.charAt(end - 1) == '/')) {
+            end--;
+        }
+
+        return path.substring(start, end);
+    }
+
+    /**
+     * Reads the next logical line (joining lines ending with a backslash) into the line buffer.
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean any = false;
+
+        while (true) {
+            if ((bufPos == bufEnd) && !fill()) {
+                return any;
+            }
+
+            any = true;
+            byte b = buf[bufPos++];
+
+            if (b == '\n') {
+                lineNumber++;
+
+                if ((lineLength > 0) && (line[lineLength - 1] == '\\') && !isEscaped(lineLength - 1)) {
+                    line[lineLength - 1] = ' ';     // continuation
+                    continue;
+                }
+
+                return true;
+            }
+
+            if (lineLength == line.length) {
+                byte[] newLine = new byte[line.length * 2];
+                System.arraycopy(line, 0, newLine, 0, lineLength);
+                line = newLine;
+            }
+
+            line[lineLength++] = b;
+        }
+    }
+
+    private boolean isEscaped(int pos) {
+        int count = 0;
+        while ((pos > 0) && (line[pos - 1] == '\\')) {
+            pos--;
+            count++;
+        }
+
+        return (count % 2) != 0;
+    }
+
+    private boolean fill() throws IOException {
+        int n = inputStream.read(buf, 0, buf.length);
+        if (n <= 0) {
+            return false;
+        }
+
+        bufPos = 0;
+        bufEnd = n;
+        return true;
+    }
+
+    private int skipBlanks(int pos) {
+        while ((pos < lineLength) && ((line[pos] == ' ') || (line[pos] == '\t') || (line[pos] == '\r'))) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    private int tokenEnd(int pos) {
+        while ((pos < lineLength) && (line[pos] != ' ') && (line[pos] != '\t') && (line[pos] != '\r')) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == c) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean equals(int start, int end, byte[] s) {
+        if (end - start != s.length) {
+            return false;
+        }
+
+        for (int i = 0; i < s.length; i++) {
+            if (line[start + i] != s[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private IOException malformed(String message) {
+        return new IOException(MessageFormat.format("{0} at line {1}", message, lineNumber));
+    }
+
+    private static boolean isOctalDigit(byte b) {
+        return (b >= '0') && (b <= '7');
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -2,14 +2,24 @@ package com.github.gino0631.pac;
 
 import org.apache.commons.compress.archivers.zip.UnixStat;
 
+import java.io.Flushable;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Locale;
 
-final class MtreeWriter {
-    private final Appendable appendable;
+/**
+ * Writes mtree specifications as bytes, escaping file names and formatting numbers directly into a reusable buffer,
+ * so that no intermediate strings are allocated per entry. Call {@link #flush()} when done.
+ */
+final class MtreeWriter implements Flushable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_TOKEN_SIZE = 32;   // enough for any number, or an escaped code point
+
+    private final OutputStream outputStream;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
 
     public enum FileType {
         BLOCK,
@@ -20,18 +30,25 @@ final class MtreeWriter {
         LINK,
         SOCKET;
 
+        private final String code = name().toLowerCase(Locale.ROOT);
+        private final byte[] codeBytes = code.getBytes(StandardCharsets.US_ASCII);
+
         String getCode() {
-            return name().toLowerCase();
+            return code;
+        }
+
+        byte[] getCodeBytes() {
+            return codeBytes;
         }
     }
 
-    MtreeWriter(Appendable appendable) {
-        this.appendable = appendable;
+    MtreeWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
     }
 
     MtreeWriter writeHeader() throws IOException {
-        appendable.append("#mtree\n");
-        appendable.append("/set type=file uid=0 gid=0 mode=644\n");
+        write("#mtree\n");
+        write("/set type=file uid=0 gid=0 mode=644\n");
 
         return this;
     }
@@ -44,94 +61,171 @@ final class MtreeWriter {
     MtreeWriter writeEntry(String name, FileType fileType, long size, Instant lastModified,
                            int mode, long uid, long gid, String link,
                            String md5digest, String sha256digest) throws IOException {
-        appendable.append("./");
+        write("./");
         writeFilename(name);
 
-        appendable.append(" time=").append(Long.toString(lastModified.getEpochSecond())).append('.').append(Integer.toString(lastModified.getNano()));
+        write(" time=");
+        writeDecimal(lastModified.getEpochSecond());
+        write('.');
+        writeDecimal(lastModified.getNano());
 
         if (mode != UnixStat.DEFAULT_FILE_PERM) {
-            appendable.append(" mode=");
-            writeOctal(appendable, mode);
+            write(" mode=");
+            writeOctal(mode);
         }
 
         if ((uid != 0) || (gid != 0)) {
-            write(" uid=", uid);
-            write(" gid=", gid);
+            write(" uid=");
+            writeDecimal(uid);
+            write(" gid=");
+            writeDecimal(gid);
         }
 
         if (fileType == FileType.FILE) {
-            write(" size=", size);
+            write(" size=");
+            writeDecimal(size);
 
         } else {
-            appendable.append(" type=").append(fileType.getCode());
+            write(" type=");
+            write(fileType.getCodeBytes());
         }
 
         if ((link != null) && !link.isEmpty()) {
-            write(" link=", link);
+            write(" link=");
+            writeEscaped(link, link.length());
         }
 
         if (md5digest != null) {
-            write(" md5digest=", md5digest);
+            write(" md5digest=");
+            write(md5digest);
         }
 
         if (sha256digest != null) {
-            write(" sha256digest=", md5digest);
+            write(" sha256digest=");
+            write(sha256digest);
         }
 
-        appendable.append('\n');
+        write('\n');
 
         return this;
     }
 
-    private void write(String name, long value) throws IOException {
-        write(name, Long.toString(value));
-    }
+    @Override
+    public void flush() throws IOException {
+        if (pos > 0) {
+            outputStream.write(buf, 0, pos);
+            pos = 0;
+        }
 
-    private void write(String name, String value) throws IOException {
-        appendable.append(name).append(value);
+        outputStream.flush();
     }
 
     private void writeFilename(String filename) throws IOException {
-        StringBuilder sb = new StringBuilder(filename.length() + 16);
+        int end;
+        for (end = filename.length(); end > 0; end--) {
+            if (filename.charAt(end - 1) != '/') {
+                break;
+            }
+        }
+
+        writeEscaped(filename, end);
+    }
+
+    private void writeEscaped(String s, int end) throws IOException {
         int charCount;
 
-        for (int i = 0; i < filename.length(); i += charCount) {
-            int cp = filename.codePointAt(i);
+        for (int i = 0; i < end; i += charCount) {
+            ensureCapacity(MAX_TOKEN_SIZE);
+            int cp = s.codePointAt(i);
             charCount = Character.charCount(cp);
 
-            if ((charCount == 1) && (0x20 <= cp) && (cp <= 0x7E) && (cp != '\\')) {
-                sb.append((char) cp);
+            if ((0x20 < cp) && (cp <= 0x7E) && (cp != '\\')) {
+                buf[pos++] = (byte) cp;
+
+            } else if (cp < 0x80) {
+                putEscaped(cp);
+
+            } else if (cp < 0x800) {
+                putEscaped(0xC0 | (cp >> 6));
+                putEscaped(0x80 | (cp & 0x3F));
+
+            } else if (Character.isSurrogate((char) cp) && (charCount == 1)) {
+                putEscaped('?');    // unpaired surrogate, replaced as by the UTF-8 encoder
+
+            } else if (cp < 0x10000) {
+                putEscaped(0xE0 | (cp >> 12));
+                putEscaped(0x80 | ((cp >> 6) & 0x3F));
+                putEscaped(0x80 | (cp & 0x3F));
 
             } else {
-                ByteBuffer buf = StandardCharsets.UTF_8.encode(CharBuffer.wrap(filename, i, i + charCount));
-                while (buf.hasRemaining()) {
-                    writeEscaped(sb, buf.get());
-                }
+                putEscaped(0xF0 | (cp >> 18));
+                putEscaped(0x80 | ((cp >> 12) & 0x3F));
+                putEscaped(0x80 | ((cp >> 6) & 0x3F));
+                putEscaped(0x80 | (cp & 0x3F));
             }
         }
+    }
+
+    private void putEscaped(int b) {
+        buf[pos++] = '\\';
+        buf[pos++] = (byte) ('0' + ((b >> 6) & 7));
+        buf[pos++] = (byte) ('0' + ((b >> 3) & 7));
+        buf[pos++] = (byte) ('0' + (b & 7));
+    }
+
+    private void writeOctal(int value) throws IOException {
+        ensureCapacity(MAX_TOKEN_SIZE);
+
+        int digits = Math.max(3, (32 - Integer.numberOfLeadingZeros(value) + 2) / 3);
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + (value & 7));
+            value >>>= 3;
+        }
 
-        int end;
-        for (end = sb.length(); end > 0; end--) {
-            if (sb.charAt(end - 1) != '/') {
-                break;
-            }
+        pos += digits;
+    }
+
+    private void writeDecimal(long value) throws IOException {
+        ensureCapacity(MAX_TOKEN_SIZE);
+
+        if (value < 0) {
+            buf[pos++] = '-';
         }
 
-        appendable.append(sb, 0, end);
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + Math.abs(value % 10));
+            value /= 10;
+        } while (value != 0);
+
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte b = buf[i];
+            buf[i] = buf[j];
+            buf[j] = b;
+        }
     }
 
-    private static void writeEscaped(Appendable appendable, byte b) throws IOException {
-        appendable.append('\\');
-        writeOctal(appendable, b & 0xff);
+    private void write(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
     }
 
-    private static void writeOctal(Appendable appendable, int b) throws IOException {
-        String s = Integer.toOctalString(b);
+    private void write(byte[] b) throws IOException {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buf, pos, b.length);
+        pos += b.length;
+    }
 
-        for (int i = 0; i < 3 - s.length(); i++) {
-            appendable.append('0');
-        }
+    private void write(char c) throws IOException {
+        ensureCapacity(1);
+        buf[pos++] = (byte) c;
+    }
 
-        appendable.append(s);
+    private void ensureCapacity(int count) throws IOException {
+        if (pos + count > buf.length) {
+            outputStream.write(buf, 0, pos);
+            pos = 0;
+        }
     }
 }
@@ -0,0 +1,214 @@
+package com.github.gino0631.pac;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds many packages on a shared pool of threads. Packages are scheduled in the descending order of their payload sizes,
+ * so that the largest ones do not end up running alone at the end, while the small ones fill the gaps.
+ */
+public final class PackageBatchBuilder {
+    private final int threads;
+    private final List<Job> jobs = new ArrayList<>();
+
+    private static final class Job {
+        private final String name;
+        private final PackageBuilder packageBuilder;
+        private final Path outputFile;
+        private long inputSize;
+
+        Job(String name, PackageBuilder packageBuilder, Path outputFile) {
+            this.name = name;
+            this.packageBuilder = packageBuilder;
+            this.outputFile = outputFile;
+        }
+    }
+
+    /**
+     * Outcome of building a single package of the batch.
+     */
+    public static final class Result {
+        private final String name;
+        private final Path outputFile;
+        private final long inputSize;
+        private final BuildResult buildResult;
+        private final Exception failure;
+        private final Duration elapsedTime;
+
+        Result(Job job, BuildResult buildResult, Exception failure, Duration elapsedTime) {
+            this.name = job.name;
+            this.outputFile = job.outputFile;
+            this.inputSize = job.inputSize;
+            this.buildResult = buildResult;
+            this.failure = failure;
+            this.elapsedTime = elapsedTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Path getOutputFile() {
+            return outputFile;
+        }
+
+        /**
+         * Returns the total size of payload files of the package.
+         *
+         * @return number of bytes
+         */
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        /**
+         * Returns the result of building the package.
+         *
+         * @return build result, or {@code null} if the build failed
+         */
+        public BuildResult getBuildResult() {
+            return buildResult;
+        }
+
+        /**
+         * Returns the reason of the build failure.
+         *
+         * @return exception, or {@code null} if the package was built successfully
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * Returns the time spent on building the package (not including the time spent waiting for a free thread).
+         *
+         * @return elapsed time
+         */
+        public Duration getElapsedTime() {
+            return elapsedTime;
+        }
+    }
+
+    /**
+     * Creates a batch builder using as many threads as there are available processors.
+     */
+    public PackageBatchBuilder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a batch builder using the given number of threads.
+     *
+     * @param threads maximum number of packages to build at the same time
+     */
+    public PackageBatchBuilder(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal number of threads {0}", threads));
+        }
+
+        this.threads = threads;
+    }
+
+    /**
+     * Adds a package to the batch.
+     *
+     * @param name           name to identify the package by in the results
+     * @param packageBuilder configured package builder
+     * @param outputFile     file to write the package to
+     * @return this builder
+     */
+    public PackageBatchBuilder add(String name, PackageBuilder packageBuilder, Path outputFile) {
+        for (Job job : jobs) {
+            if (job.outputFile.equals(outputFile)) {
+                throw new IllegalArgumentException(MessageFormat.format("Duplicate output file {0}", outputFile));
+            }
+        }
+
+        jobs.add(new Job(name, packageBuilder, outputFile));
+        return this;
+    }
+
+    /**
+     * Builds all packages of the batch. A failure to build a package does not stop the others from being built;
+     * the output file of a failed package is deleted.
+     *
+     * @return results, in the order the packages were added
+     * @throws IOException if an I/O error occurs while estimating package sizes, or the current thread is interrupted
+     */
+    public List<Result> build() throws IOException {
+        for (Job job : jobs) {
+            job.inputSize = job.packageBuilder.getInputSize();
+        }
+
+        List<Job> scheduledJobs = new ArrayList<>(jobs);
+        scheduledJobs.sort(Collections.reverseOrder(Comparator.comparingLong(job -> job.inputSize)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(jobs.size(), 1)));
+        try {
+            Map<Job, Future<Result>> futures = new IdentityHashMap<>();
+            for (Job job : scheduledJobs) {
+                futures.put(job, executor.submit(() -> build(job)));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (Job job : jobs) {
+                results.add(futures.get(job).get());
+            }
+
+            return results;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());  // should not happen, as failures are reported in results
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result build(Job job) throws IOException {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+
+        try {
+            Path parent = job.outputFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            BuildResult buildResult;
+            try (OutputStream os = Files.newOutputStream(job.outputFile)) {
+                buildResult = job.packageBuilder.build(os);
+            }
+            succeeded = true;
+
+            return new Result(job, buildResult, null, Duration.ofNanos(System.nanoTime() - start));
+
+        } catch (IOException | RuntimeException e) {
+            return new Result(job, null, e, Duration.ofNanos(System.nanoTime() - start));
+
+        } finally {
+            if (!succeeded) {
+                Files.deleteIfExists(job.outputFile);
+            }
+        }
+    }
+}
@@ -1,21 +1,32 @@
 package com.github.gino0631.pac;
 
 import com.github.gino0631.common.io.IoStreams;
+import com.github.gino0631.common.io.Writable;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.Provider;
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.GZIPOutputStream;
 
 public final class PackageBuilder {
+    static final String INSTALL_NAME = ".INSTALL";
+    static final String MTREE_NAME = ".MTREE";
+    static final String PKGINFO_NAME = ".PKGINFO";
+    private static final int TAR_RECORD_SIZE = 512;
+    static final int XZ_STREAM_HEADER_SIZE = 12;
+    private static final Set<String> METADATA_NAMES = new HashSet<>(Arrays.asList(INSTALL_NAME, MTREE_NAME, PKGINFO_NAME));
+
     private Path rootDir;
     private Path installScript;
     private String pkgName;
@@ -26,6 +37,14 @@ public final class PackageBuilder {
     private String packager;
     private String arch;
     private PermissionSupplier permissionSupplier;
+    private PackageSigner signer;
+    private int compressionPreset = LZMA2Options.PRESET_DEFAULT;
+    private boolean adaptiveCompression;
+    private long blockSize;
+    private boolean pipelined;
+    private EntryOrder entryOrder = EntryOrder.PATH;
+    private Set<Digest> digests = EnumSet.allOf(Digest.class);
+    private Provider digestProvider;
     private Map<String, String> symlinks = new HashMap<>();
     private List<String> licenses = new ArrayList<>();
     private List<String> depends = new ArrayList<>();
@@ -36,6 +55,68 @@ public final class PackageBuilder {
         FilePermissions get(String name, boolean isDirectory);
     }
 
+    @FunctionalInterface
+    private interface EntryWriter {
+        void write(PackageEntry entry, TarArchiveOutputStream tar) throws IOException;
+    }
+
+    /**
+     * Digests of file contents which can be included in {@code .MTREE}.
+     */
+    public enum Digest {
+        MD5("MD5"),
+        SHA256("SHA-256");
+
+        private final String algorithm;
+
+        Digest(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        String getAlgorithm() {
+            return algorithm;
+        }
+    }
+
+    /**
+     * Order in which payload entries are written to the package. Package metadata ({@code .PKGINFO}, {@code .MTREE}
+     * and {@code .INSTALL}) is always written first.
+     */
+    public enum EntryOrder {
+        /**
+         * Lexical order of paths.
+         */
+        PATH(Comparator.comparing(PackageEntry::getName)),
+
+        /**
+         * Directories and symbolic links first, then files clustered by extension and file name, so that similar
+         * files get close to each other within the compression window.
+         */
+        EXTENSION(Comparator.comparingInt(EntryOrder::getKind)
+                .thenComparing(e -> ContentClassifier.getExtension(getFileName(e)))
+                .thenComparing(EntryOrder::getFileName)
+                .thenComparing(PackageEntry::getName));
+
+        private final Comparator<PackageEntry> comparator;
+
+        EntryOrder(Comparator<PackageEntry> comparator) {
+            this.comparator = comparator;
+        }
+
+        Comparator<PackageEntry> getComparator() {
+            return comparator;
+        }
+
+        private static int getKind(PackageEntry entry) {
+            return entry.isDirectory() ? 0 : entry.isSymbolicLink() ? 1 : 2;
+        }
+
+        private static String getFileName(PackageEntry entry) {
+            String name = entry.getName();
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+    }
+
     public PackageBuilder setRootDir(Path rootDir) {
         this.rootDir = rootDir;
         return this;
@@ -86,6 +167,100 @@ public final class PackageBuilder {
         return this;
     }
 
+    public PackageBuilder setSigner(PackageSigner signer) {
+        this.signer = signer;
+        return this;
+    }
+
+    public PackageBuilder setCompressionPreset(int compressionPreset) {
+        if ((compressionPreset < LZMA2Options.PRESET_MIN) || (compressionPreset > LZMA2Options.PRESET_MAX)) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal compression preset {0}", compressionPreset));
+        }
+
+        this.compressionPreset = compressionPreset;
+        return this;
+    }
+
+    /**
+     * Enables adaptive compression, which groups files that are compressed already (judging by their extension or content)
+     * at the end of the package, and writes them to a separate XZ block using the fastest preset,
+     * so that little CPU time is spent on trying to compress them again (incompressible chunks are stored as is by LZMA2).
+     *
+     * @param adaptiveCompression whether to use adaptive compression
+     * @return this builder
+     */
+    public PackageBuilder setAdaptiveCompression(boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+        return this;
+    }
+
+    /**
+     * Makes the package seekable, by ending XZ blocks at entry boundaries once they reach the given uncompressed size
+     * (metadata always gets a block of its own). Each entry can then be read by decompressing only its block,
+     * using {@link SeekablePackageReader} and the index returned in {@link BuildResult#getIndex()}.
+     * Smaller blocks make reading faster, but compression worse.
+     *
+     * @param blockSize minimum block size in bytes, or 0 to write a single block (the default)
+     * @return this builder
+     */
+    public PackageBuilder setBlockSize(long blockSize) {
+        if (blockSize < 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal block size {0}", blockSize));
+        }
+
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    /**
+     * Enables pipelined building, in which reading files, computing their digests and compressing them run on separate threads
+     * at the same time, and contents of every file are read in full only once (with adaptive compression, a sample of each file
+     * is still read beforehand, to classify it). Memory use is bounded, while a temporary file (of the size of the compressed
+     * payload) is used.
+     *
+     * @param pipelined whether to build in stages running in parallel
+     * @return this builder
+     */
+    public PackageBuilder setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    public PackageBuilder setEntryOrder(EntryOrder entryOrder) {
+        this.entryOrder = Objects.requireNonNull(entryOrder);
+        return this;
+    }
+
+    /**
+     * Sets the digests of file contents to be included in {@code .MTREE}. By default, both MD5 and SHA-256 are included,
+     * while recent versions of pacman need only SHA-256.
+     *
+     * @param digests digests to compute
+     * @return this builder
+     * @throws IllegalArgumentException if the digest provider set already does not support some of the digests
+     */
+    public PackageBuilder setDigests(Collection<Digest> digests) {
+        Set<Digest> digestSet = digests.isEmpty() ? EnumSet.noneOf(Digest.class) : EnumSet.copyOf(digests);
+        checkDigestProvider(digestSet, digestProvider);
+
+        this.digests = digestSet;
+        return this;
+    }
+
+    /**
+     * Sets the security provider to compute digests with (for example, one using hardware-accelerated implementations).
+     *
+     * @param digestProvider provider, or {@code null} to use the most preferred provider supporting each algorithm
+     * @return this builder
+     * @throws IllegalArgumentException if the provider does not support some of the digests set
+     */
+    public PackageBuilder setDigestProvider(Provider digestProvider) {
+        checkDigestProvider(digests, digestProvider);
+
+        this.digestProvider = digestProvider;
+        return this;
+    }
+
     public PackageBuilder addSymlink(String name, String linkTo) {
         symlinks.put(name, linkTo);
         return this;
@@ -127,8 +302,153 @@ public final class PackageBuilder {
         return this;
     }
 
-    public void build(OutputStream outputStream) throws IOException {
-        // Validation
+    public BuildResult build(OutputStream outputStream) throws IOException {
+        validate();
+
+        if (pipelined) {
+            return buildPipelined(outputStream);
+        }
+
+        Digester digester = newDigester();
+        NavigableMap<String, PackageEntry> entries = collectEntries(Collections.emptyMap(), digester);
+        addMetadata(entries, digester);
+        List<PackageEntry> orderedEntries = orderEntries(entries.values());
+
+        // Write .PKG.TAR.XZ
+        PackageIndex index = (blockSize > 0) ? new PackageIndex() : null;
+        return write(outputStream, index, os -> writeEntries(os, orderedEntries, index, PackageEntry::writeTo, true));
+    }
+
+    /**
+     * Does everything {@link #build(OutputStream)} does, except writing the archive: validates the configuration, collects
+     * the entries with their permissions, and generates the package metadata. Digests configured with {@link #setDigests(Collection)}
+     * are computed as usual, so clearing them makes planning as fast as listing the root directory.
+     *
+     * @return package plan
+     * @throws IOException if an I/O error occurs
+     */
+    public PackagePlan plan() throws IOException {
+        validate();
+
+        Digester digester = newDigester();
+        NavigableMap<String, PackageEntry> entries = collectEntries(Collections.emptyMap(), digester);
+        addMetadata(entries, digester);
+
+        return new PackagePlan(entries.values());
+    }
+
+    /**
+     * Builds the package in stages running on separate threads: files are read once, and their contents are passed both to
+     * the hashing stage and to the compression stage. As {@code .MTREE} (which needs the digests) precedes the payload,
+     * the payload is compressed into a temporary file as a separate XZ stream, and appended to the metadata stream in the end.
+     */
+    private BuildResult buildPipelined(OutputStream outputStream) throws IOException {
+        Digester digester = newDigester();
+        NavigableMap<String, PackageEntry> entries = collectEntries(Collections.emptyMap(), null);
+
+        List<PackageEntry> payload = new ArrayList<>();
+        for (PackageEntry entry : orderEntries(entries.values())) {
+            if (isMetadata(entry)) {
+                entry.setDigests(digester.digest(entry::newInputStream));
+
+            } else {
+                payload.add(entry);
+            }
+        }
+
+        Path payloadFile = Files.createTempFile("pac", ".tar.xz");
+        try {
+            PackageIndex payloadIndex = (blockSize > 0) ? new PackageIndex() : null;
+            try (PipelinedReader reader = new PipelinedReader(payload, newDigester());
+                 OutputStream os = Files.newOutputStream(payloadFile)) {
+                writeEntries(os, payload, payloadIndex, (entry, tar) -> entry.writeTo(tar, reader.next(entry)), true);
+                reader.finish();
+            }
+
+            addMetadata(entries, digester);
+            List<PackageEntry> metadata = orderEntries(entries.values()).stream()
+                    .filter(PackageBuilder::isMetadata)
+                    .collect(Collectors.toList());
+
+            PackageIndex index = (payloadIndex != null) ? new PackageIndex() : null;
+            return write(outputStream, index, os -> {
+                long[] metadataSize = {0};
+                long metadataTarSize = writeEntries(IoStreams.count(os, n -> metadataSize[0] += n), metadata, index,
+                        PackageEntry::writeTo, false);
+
+                if (index != null) {
+                    index.addAll(payloadIndex, metadataSize[0], metadataTarSize);
+                }
+
+                Files.copy(payloadFile, os);
+            });
+
+        } finally {
+            Files.deleteIfExists(payloadFile);
+        }
+    }
+
+    /**
+     * Writes entries as an XZ stream, ending XZ blocks where needed, and recording locations of the entries relative
+     * to the stream in the index (if any).
+     *
+     * @return size of the written tar data
+     */
+    private long writeEntries(OutputStream os, List<PackageEntry> entries, PackageIndex index, EntryWriter entryWriter,
+                              boolean finish) throws IOException {
+        long[] compressedSize = {0};
+
+        try (XZOutputStream xz = new XZOutputStream(IoStreams.count(os, n -> compressedSize[0] += n), new LZMA2Options(compressionPreset))) {
+            // The archive might be continued by another stream, so it is finished only if requested; tar records are passed
+            // through as soon as an entry is closed, so nothing is left buffered
+            TarArchiveOutputStream tar = new TarArchiveOutputStream(xz);
+            boolean lowEffort = false;
+            long blockOffset = XZ_STREAM_HEADER_SIZE;   // stream and block headers are written along with the first data
+            long blockPosition = 0;
+            PackageEntry previous = null;
+
+            for (PackageEntry entry : entries) {
+                boolean switchToLowEffort = adaptiveCompression && !lowEffort && !entry.isCompressible();
+                boolean endBlock = switchToLowEffort || ((index != null) && (previous != null)
+                        && ((isMetadata(previous) && !isMetadata(entry)) || (tar.getBytesWritten() - blockPosition >= blockSize)));
+
+                if (endBlock) {
+                    // Tar records are passed through as soon as an entry is closed, so the block ends exactly after the previous entry
+                    xz.endBlock();
+                    if (switchToLowEffort) {
+                        xz.updateFilters(new LZMA2Options(LZMA2Options.PRESET_MIN));
+                        lowEffort = true;
+                    }
+                    blockOffset = compressedSize[0];
+                    blockPosition = tar.getBytesWritten();
+                }
+
+                entryWriter.write(entry, tar);
+                previous = entry;
+
+                if (index != null) {
+                    // Data is followed by padding to the record size
+                    long dataOffset = tar.getBytesWritten() - getPaddedSize(entry.getSize());
+                    index.add(new PackageIndex.Entry(entry.getName(), blockOffset, blockPosition, dataOffset, entry.getSize()));
+                }
+            }
+
+            if (finish) {
+                tar.finish();
+            }
+
+            return tar.getBytesWritten();
+        }
+    }
+
+    /**
+     * Returns the size of entry data in a tar archive, which is padded to the record size.
+     */
+    static long getPaddedSize(long size) {
+        return (size + TAR_RECORD_SIZE - 1) / TAR_RECORD_SIZE * TAR_RECORD_SIZE;
+    }
+
+    void validate() {
         Objects.requireNonNull(rootDir, "Root directory must be specified");
         if (Files.notExists(rootDir)) {
             throw new IllegalArgumentException(MessageFormat.format("Root directory {0} does not exist", rootDir));
@@ -147,10 +467,14 @@ public final class PackageBuilder {
         }
 
         Objects.requireNonNull(arch, "Target architecture must be specified");
+    }
 
-        // Creation
+    /**
+     * Collects payload, symlink and install script entries, reusing up-to-date entries from a previous build
+     * (so that files which have not changed are not hashed again).
+     */
+    NavigableMap<String, PackageEntry> collectEntries(Map<String, PackageEntry> previous, Digester digester) throws IOException {
         final int rootPathLength = rootDir.toString().length() + 1;
-        long installBytes = 0;
 
         List<Path> files = Files.walk(rootDir).skip(1).collect(Collectors.toList());
         NavigableMap<String, PackageEntry> entries = new TreeMap<>();
@@ -158,30 +482,47 @@ public final class PackageBuilder {
         // Process payload
         for (Path path : files) {
             final String name = path.toString().substring(rootPathLength).replace('\\', '/');
-            final boolean isDirectory = Files.isDirectory(path);
-            final long size = isDirectory ? 0 : Files.size(path);
-            installBytes += size;
 
-            PackageEntry entry = new PackageEntry(path, name, permissionSupplier);
+            PackageEntry entry = previous.get(Files.isDirectory(path) ? name + "/" : name);
+            if ((entry == null) || !entry.isUpToDate(path)) {
+                entry = new PackageEntry(path, name, permissionSupplier, digester);
+            }
             entries.put(entry.getName(), entry);
         }
 
         // Process symlinks
         for (Map.Entry<String, String> e : symlinks.entrySet()) {
             PackageEntry entry = new PackageEntry(e.getKey(), e.getValue());
+            PackageEntry previousEntry = previous.get(entry.getName());
+            if ((previousEntry != null) && previousEntry.isSymbolicLink() && previousEntry.getLinkName().equals(entry.getLinkName())) {
+                entry = previousEntry;
+            }
+
             if (entries.putIfAbsent(entry.getName(), entry) != null) {
                 throw new IllegalArgumentException(MessageFormat.format("Duplicate path {0}", entry.getName()));
             }
 
-            addParentDirs(entries, entry);
+            addParentDirs(entries, entry, previous);
         }
 
         // Add install script
         if (installScript != null) {
-            PackageEntry install = new PackageEntry(installScript, ".INSTALL", null);
+            PackageEntry install = previous.get(INSTALL_NAME);
+            if ((install == null) || !install.isUpToDate(installScript)) {
+                install = new PackageEntry(installScript, INSTALL_NAME, null, digester);
+            }
             entries.put(install.getName(), install);
         }
 
+        return entries;
+    }
+
+    /**
+     * Adds {@code .PKGINFO} and {@code .MTREE} entries describing the given entries.
+     */
+    void addMetadata(NavigableMap<String, PackageEntry> entries, Digester digester) throws IOException {
+        long installBytes = getInstalledSize(entries.values());
+
         // Write .PKGINFO
         {
             ByteArrayOutputStream pkginfoOs = new ByteArrayOutputStream(4096);
@@ -207,36 +548,152 @@ public final class PackageBuilder {
                     writePkginfoEntry(wr, "optdepend", optDepend);
                 }
             }
-            PackageEntry pkginfo = new PackageEntry(".PKGINFO", pkginfoOs.toByteArray());
+            PackageEntry pkginfo = new PackageEntry(PKGINFO_NAME, pkginfoOs.toByteArray(), digester);
             entries.put(pkginfo.getName(), pkginfo);
         }
 
         // Write .MTREE
         {
             ByteArrayOutputStream mtreeOs = new ByteArrayOutputStream(4096);
-            try (Writer wr = new OutputStreamWriter(new GZIPOutputStream(mtreeOs), StandardCharsets.UTF_8)) {
-                MtreeWriter mtreeWriter = new MtreeWriter(wr).writeHeader();
+            try (OutputStream os = new GZIPOutputStream(mtreeOs)) {
+                MtreeWriter mtreeWriter = new MtreeWriter(os).writeHeader();
                 for (PackageEntry entry : entries.values()) {
                     entry.writeTo(mtreeWriter);
                 }
+                mtreeWriter.flush();
             }
-            PackageEntry mtree = new PackageEntry(".MTREE", mtreeOs.toByteArray());
+            PackageEntry mtree = new PackageEntry(MTREE_NAME, mtreeOs.toByteArray(), digester);
             entries.put(mtree.getName(), mtree);
         }
+    }
 
-        // Write .PKG.TAR.XZ
-        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new XZCompressorOutputStream(IoStreams.closeProtect(outputStream)))) {
-            for (PackageEntry entry : entries.values()) {
-                entry.writeTo(tar);
+    /**
+     * Orders entries as they are to be written to the package: metadata first, then payload according to the entry order
+     * (with incompressible files at the end, if adaptive compression is enabled).
+     */
+    List<PackageEntry> orderEntries(Collection<PackageEntry> entries) throws IOException {
+        List<PackageEntry> metadata = new ArrayList<>();
+        List<PackageEntry> compressible = new ArrayList<>();
+        List<PackageEntry> incompressible = new ArrayList<>();
+
+        for (PackageEntry entry : entries) {
+            if (isMetadata(entry)) {
+                metadata.add(entry);
+
+            } else if (adaptiveCompression && !entry.isCompressible()) {
+                incompressible.add(entry);
+
+            } else {
+                compressible.add(entry);
             }
         }
+
+        metadata.sort(EntryOrder.PATH.getComparator());
+        compressible.sort(entryOrder.getComparator());
+        incompressible.sort(entryOrder.getComparator());
+
+        List<PackageEntry> orderedEntries = new ArrayList<>(entries.size());
+        orderedEntries.addAll(metadata);
+        orderedEntries.addAll(compressible);
+        orderedEntries.addAll(incompressible);
+
+        return orderedEntries;
+    }
+
+    /**
+     * Writes package content, computing checksums and signing the compressed bytes on the fly.
+     */
+    BuildResult write(OutputStream outputStream, Writable content) throws IOException {
+        return write(outputStream, null, content);
     }
 
-    private static void addParentDirs(Map<String, PackageEntry> entries, PackageEntry entry) {
+    BuildResult write(OutputStream outputStream, PackageIndex index, Writable content) throws IOException {
+        ChecksumOutputStream checksumOs = new ChecksumOutputStream(outputStream);
+        PackageSigner.SigningOutputStream signingOs = (signer != null) ? signer.newSigningStream(checksumOs) : null;
+
+        content.writeTo(IoStreams.closeProtect((signingOs != null) ? signingOs : checksumOs));
+
+        return new BuildResult(checksumOs.getSize(), checksumOs.getMd5Digest(), checksumOs.getSha256Digest(),
+                (signingOs != null) ? signingOs.getSignature() : null, index);
+    }
+
+    /**
+     * Estimates the amount of work needed to build the package.
+     *
+     * @return total size of payload files, or 0 if the root directory does not exist
+     */
+    long getInputSize() throws IOException {
+        if ((rootDir == null) || !Files.isDirectory(rootDir)) {
+            return 0;
+        }
+
+        try (Stream<Path> paths = Files.walk(rootDir)) {
+            long size = 0;
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isRegularFile(path)) {
+                    size += Files.size(path);
+                }
+            }
+
+            return size;
+        }
+    }
+
+    private static void checkDigestProvider(Set<Digest> digests, Provider digestProvider) {
+        if (digestProvider != null) {
+            for (Digest digest : digests) {
+                if (digestProvider.getService("MessageDigest", digest.getAlgorithm()) == null) {
+                    throw new IllegalArgumentException(MessageFormat.format("Security provider {0} does not support {1}",
+                            digestProvider.getName(), digest.getAlgorithm()));
+                }
+            }
+        }
+    }
+
+    Digester newDigester() {
+        return new Digester(digests, digestProvider);
+    }
+
+    int getCompressionPreset() {
+        return compressionPreset;
+    }
+
+    boolean isAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+    long getBlockSize() {
+        return blockSize;
+    }
+
+    boolean isPipelined() {
+        return pipelined;
+    }
+
+    static long getInstalledSize(Collection<PackageEntry> entries) {
+        long installBytes = 0;
+        for (PackageEntry entry : entries) {
+            if ((entry.getFile() != null) && !entry.isDirectory() && !isMetadata(entry)) {
+                installBytes += entry.getSize();
+            }
+        }
+
+        return installBytes;
+    }
+
+    static boolean isMetadata(PackageEntry entry) {
+        return METADATA_NAMES.contains(entry.getName());
+    }
+
+    private static void addParentDirs(Map<String, PackageEntry> entries, PackageEntry entry, Map<String, PackageEntry> previous) {
         Path path = Paths.get(entry.getName());
 
         while ((path = path.getParent()) != null) {
             PackageEntry dir = new PackageEntry(path.toString());
+            PackageEntry previousDir = previous.get(dir.getName());
+            if ((previousDir != null) && previousDir.isDirectory() && (previousDir.getFile() == null)) {
+                dir = previousDir;
+            }
             entries.putIfAbsent(dir.getName(), dir);
         }
     }
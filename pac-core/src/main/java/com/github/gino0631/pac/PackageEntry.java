@@ -11,22 +11,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 
 final class PackageEntry extends TarArchiveEntry {
-    private static final String MD5_DIGEST = "MD5";
-    private static final String SHA256_DIGEST = "SHA-256";
-    private static final char[] HEX_CODE = "0123456789abcdef".toCharArray();
-
     private final Instant lastModified;
     private final InputStreamSupplier streamSupplier;
-    private final String md5digest;
-    private final String sha256digest;
+    private String md5digest;
+    private String sha256digest;
+    private Boolean compressible;
 
-    PackageEntry(Path path, String fileName, PackageBuilder.PermissionSupplier permissionSupplier) throws IOException {
+    PackageEntry(Path path, String fileName, PackageBuilder.PermissionSupplier permissionSupplier, Digester digester) throws IOException {
         super(path.toFile(), fileName);
 
         int mode = isDirectory() ? FilePermissions.DEFAULT_DIRECTORY_MODE : FilePermissions.DEFAULT_FILE_MODE;
@@ -53,21 +47,17 @@ final class PackageEntry extends TarArchiveEntry {
         if (isFile()) {
             streamSupplier = InputStreamSupplier.of(path);
 
-            MessageDigest md5 = getMessageDigest(MD5_DIGEST);
-            MessageDigest sha256 = getMessageDigest(SHA256_DIGEST);
-            updateDigests(md5, sha256);
-
-            md5digest = toHexString(md5.digest());
-            sha256digest = toHexString(sha256.digest());
+            // Without a digester, digests are to be set later
+            if (digester != null) {
+                setDigests(digester.digest(streamSupplier));
+            }
 
         } else {
             streamSupplier = null;
-            md5digest = null;
-            sha256digest = null;
         }
     }
 
-    PackageEntry(String name, byte[] data) {
+    PackageEntry(String name, byte[] data, Digester digester) {
         super(name, LF_NORMAL);
 
         setSize(data.length);
@@ -77,18 +67,12 @@ final class PackageEntry extends TarArchiveEntry {
         lastModified = Instant.now();
         streamSupplier = () -> new ByteArrayInputStream(data);
 
-        MessageDigest md5 = getMessageDigest(MD5_DIGEST);
-        MessageDigest sha256 = getMessageDigest(SHA256_DIGEST);
-
         try {
-            updateDigests(md5, sha256);
+            setDigests(digester.digest(streamSupplier));
 
         } catch (IOException e) {
             throw new RuntimeException(e);  // unlikely, as we are working with byte arrays here
         }
-
-        md5digest = toHexString(md5.digest());
-        sha256digest = toHexString(sha256.digest());
     }
 
     PackageEntry(String name, String linkName) {
@@ -100,8 +84,6 @@ final class PackageEntry extends TarArchiveEntry {
 
         lastModified = Instant.now();
         streamSupplier = null;
-        md5digest = null;
-        sha256digest = null;
     }
 
     PackageEntry(String name) {
@@ -112,8 +94,51 @@ final class PackageEntry extends TarArchiveEntry {
 
         lastModified = Instant.now();
         streamSupplier = null;
-        md5digest = null;
-        sha256digest = null;
+    }
+
+    /**
+     * Checks if the entry still reflects the file it was created from (judging by the type, size and modification time).
+     */
+    boolean isUpToDate(Path path) throws IOException {
+        return (getFile() != null) && Files.exists(path)
+                && (Files.isDirectory(path) == isDirectory())
+                && (isDirectory() || (Files.size(path) == getSize()))
+                && Files.getLastModifiedTime(path).toInstant().equals(lastModified);
+    }
+
+    /**
+     * Checks if the entry content is worth compressing. The result is computed once, as it might require reading the file.
+     */
+    boolean isCompressible() throws IOException {
+        if (compressible == null) {
+            compressible = (getFile() == null) || !isFile() || ContentClassifier.isCompressible(getFile().toPath());
+        }
+
+        return compressible;
+    }
+
+    String getMd5Digest() {
+        return md5digest;
+    }
+
+    String getSha256Digest() {
+        return sha256digest;
+    }
+
+    void setDigests(String[] digests) {
+        md5digest = digests[0];
+        sha256digest = digests[1];
+    }
+
+    /**
+     * Checks if the entry has contents to be read (that is, it is a regular file).
+     */
+    boolean hasContents() {
+        return streamSupplier != null;
+    }
+
+    InputStream newInputStream() throws IOException {
+        return (streamSupplier != null) ? streamSupplier.newInputStream() : new ByteArrayInputStream(new byte[0]);
     }
 
     void writeTo(MtreeWriter mtreeWriter) throws IOException {
@@ -123,24 +148,21 @@ final class PackageEntry extends TarArchiveEntry {
     }
 
     void writeTo(TarArchiveOutputStream tar) throws IOException {
-        tar.putArchiveEntry(this);
-
-        if (streamSupplier != null) {
-            try (InputStream in = streamSupplier.newInputStream()) {
-                IoStreams.copy(in, tar);
-            }
+        try (InputStream in = newInputStream()) {
+            writeTo(tar, in);
         }
-
-        tar.closeArchiveEntry();
     }
 
-    private void updateDigests(MessageDigest md5, MessageDigest sha256) throws IOException {
-        try (InputStream is = new DigestInputStream(new DigestInputStream(streamSupplier.newInputStream(), md5), sha256)) {
-            IoStreams.exhaust(is);
-        }
+    /**
+     * Writes the entry, with contents read from the given stream.
+     */
+    void writeTo(TarArchiveOutputStream tar, InputStream contents) throws IOException {
+        tar.putArchiveEntry(this);
+        IoStreams.copy(contents, tar);
+        tar.closeArchiveEntry();
     }
 
-    private MtreeWriter.FileType getFileType() {
+    MtreeWriter.FileType getFileType() {
         if (isDirectory()) {
             return MtreeWriter.FileType.DIR;
 
@@ -154,23 +176,4 @@ final class PackageEntry extends TarArchiveEntry {
             throw new IllegalArgumentException("Unsupported file type");
         }
     }
-
-    private static MessageDigest getMessageDigest(String algorithm) {
-        try {
-            return MessageDigest.getInstance(algorithm);
-
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static String toHexString(byte[] data) {
-        StringBuilder r = new StringBuilder(data.length * 2);
-        for (byte b : data) {
-            r.append(HEX_CODE[(b >> 4) & 0xf]);
-            r.append(HEX_CODE[(b & 0xf)]);
-        }
-
-        return r.toString();
-    }
 }
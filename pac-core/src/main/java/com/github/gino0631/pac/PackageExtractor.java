@@ -0,0 +1,319 @@
+package com.github.gino0631.pac;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Installs packages into a target root directory (for example, one of a container image), the way pacman would, but without
+ * running any install scripts. File modes, ownership and modification times are taken from {@code .MTREE}, if present,
+ * or from the archive otherwise.
+ * <p>
+ * XZ compressed packages consisting of multiple blocks (like the ones built with a block size set, or by {@code xz -T})
+ * are decompressed in parallel, several blocks (up to 128 MiB) ahead of the extraction. Other formats supported by Commons Compress
+ * (including Zstandard, if {@code zstd-jni} is available) are decompressed sequentially.
+ * <p>
+ * Instances are thread-safe, so many packages can be extracted concurrently, sharing the decompression threads.
+ */
+@SuppressWarnings("OctalInteger")
+public final class PackageExtractor implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long MAX_PARALLEL_BLOCK_SIZE = 64 << 20;
+    private static final long MAX_READ_AHEAD = 128 << 20;
+    private static final byte[] XZ_MAGIC = {(byte) 0xfd, '7', 'z', 'X', 'Z', 0};
+    private static final int[] MODE_BITS = {0400, 0200, 0100, 040, 020, 010, 04, 02, 01};
+    private static final PosixFilePermission[] PERMISSIONS = {
+            PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE,
+            PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE
+    };
+
+    private final int threads;
+    private final ExecutorService executor;
+    private boolean preserveOwnership;
+
+    /**
+     * Creates an extractor decompressing with as many threads as there are available processors.
+     */
+    public PackageExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an extractor decompressing with the given number of threads.
+     *
+     * @param threads number of decompression threads
+     */
+    public PackageExtractor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(MessageFormat.format("Illegal number of threads {0}", threads));
+        }
+
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "pac-extractor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets whether to apply user and group IDs to extracted files, which usually requires running as root.
+     * By default, extracted files are owned by the current user.
+     *
+     * @param preserveOwnership whether to apply ownership
+     * @return this extractor
+     */
+    public PackageExtractor setPreserveOwnership(boolean preserveOwnership) {
+        this.preserveOwnership = preserveOwnership;
+        return this;
+    }
+
+    /**
+     * Extracts the package into the target root directory, overwriting existing files. Package metadata
+     * ({@code .PKGINFO}, {@code .MTREE}, {@code .INSTALL} etc.) is not extracted.
+     *
+     * @param pkg        package file
+     * @param targetRoot directory to install the package into
+     * @throws IOException if an I/O error occurs, or the package contains entries which would be extracted outside of the target root
+     */
+    public void extract(Path pkg, Path targetRoot) throws IOException {
+        Path root = Files.createDirectories(targetRoot).toRealPath();
+        Map<String, MtreeReader.Entry> mtree = new HashMap<>();
+        Map<Path, TarArchiveEntry> extracted = new LinkedHashMap<>();
+        Set<Path> checkedDirs = new HashSet<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(openDecompressed(pkg))) {
+            for (TarArchiveEntry entry; (entry = tar.getNextEntry()) != null; ) {
+                String name = getName(entry);
+
+                if (name.equals(PackageBuilder.MTREE_NAME)) {
+                    MtreeReader reader = new MtreeReader(new GZIPInputStream(tar));
+                    for (MtreeReader.Entry e; (e = reader.readEntry()) != null; ) {
+                        mtree.put(e.getName(), e);
+                    }
+                    continue;
+
+                } else if (name.startsWith(".") && (name.indexOf('/') < 0)) {
+                    continue;   // like pacman, ignore any other metadata
+                }
+
+                Path path = resolve(root, name, checkedDirs);
+
+                if (entry.isDirectory()) {
+                    if (Files.isSymbolicLink(path) && Files.isDirectory(path) && path.toRealPath().startsWith(root)) {
+                        continue;   // like pacman, keep a link to a directory (e.g. bin -> usr/bin), and leave its target as is
+                    }
+
+                    if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        Files.deleteIfExists(path);
+                        Files.createDirectory(path);
+                    }
+
+                } else if (entry.isSymbolicLink()) {
+                    Files.deleteIfExists(path);
+                    Files.createSymbolicLink(path, Paths.get(entry.getLinkName()));
+
+                } else if (entry.isLink()) {
+                    Files.deleteIfExists(path);
+                    Files.createLink(path, resolve(root, entry.getLinkName(), checkedDirs));
+
+                } else if (entry.isCharacterDevice() || entry.isBlockDevice() || entry.isFIFO()) {
+                    throw new IOException(MessageFormat.format("Unsupported type of entry {0}", name));
+
+                } else {
+                    Files.deleteIfExists(path);
+                    writeFile(tar, path, buffer);
+                }
+
+                // Only the last entry written to a path determines its attributes
+                extracted.remove(path);
+                extracted.put(path, entry);
+            }
+        }
+
+        // Directories are updated after their contents, so that their permissions or times do not get in the way
+        List<Map.Entry<Path, TarArchiveEntry>> entries = new ArrayList<>(extracted.entrySet());
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            TarArchiveEntry entry = entries.get(i).getValue();
+            applyAttributes(entry, mtree.get(getName(entry)), entries.get(i).getKey());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private InputStream openDecompressed(Path pkg) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(pkg), BUFFER_SIZE);
+
+        try {
+            if (isXZ(in)) {
+                in.close();
+
+                SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(pkg.toFile()));
+                int blockCount = xz.getBlockCount();
+                boolean parallel = (threads > 1) && (blockCount > 1);
+                for (int i = 0; parallel && (i < blockCount); i++) {
+                    parallel = xz.getBlockSize(i) <= MAX_PARALLEL_BLOCK_SIZE;
+                }
+
+                if (!parallel) {
+                    return new BufferedInputStream(xz, BUFFER_SIZE);
+                }
+
+                try {
+                    return new ParallelXZInputStream(pkg, xz, executor, threads + 1, MAX_READ_AHEAD);
+
+                } finally {
+                    xz.close();
+                }
+            }
+
+            String format;
+            try {
+                format = CompressorStreamFactory.detect(in);
+
+            } catch (CompressorException e) {
+                return in;  // not compressed
+            }
+
+            return new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(format, in), BUFFER_SIZE);
+
+        } catch (IOException | CompressorException | RuntimeException e) {
+            in.close();
+            throw (e instanceof IOException) ? (IOException) e : new IOException(e);
+        }
+    }
+
+    private void applyAttributes(TarArchiveEntry entry, MtreeReader.Entry mtreeEntry, Path path) throws IOException {
+        int mode = entry.getMode();
+        long uid = entry.getLongUserId();
+        long gid = entry.getLongGroupId();
+        FileTime lastModified = FileTime.from(entry.getModTime().toInstant());
+
+        if (mtreeEntry != null) {
+            if (mtreeEntry.getMode() >= 0) {
+                mode = mtreeEntry.getMode();
+            }
+            uid = mtreeEntry.getUserId();
+            gid = mtreeEntry.getGroupId();
+            if (mtreeEntry.getLastModified() != null) {
+                lastModified = FileTime.from(mtreeEntry.getLastModified());
+            }
+        }
+
+        Set<String> views = path.getFileSystem().supportedFileAttributeViews();
+
+        if (preserveOwnership && views.contains("unix")) {
+            Files.setAttribute(path, "unix:uid", (int) uid, LinkOption.NOFOLLOW_LINKS);
+            Files.setAttribute(path, "unix:gid", (int) gid, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        // Permissions of symbolic links are not used, and links are never followed (a hard link can point to a symbolic one)
+        if (views.contains("posix") && !Files.isSymbolicLink(path)) {
+            Files.getFileAttributeView(path, PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS).setPermissions(toPermissions(mode));
+        }
+
+        Files.getFileAttributeView(path, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS).setTimes(lastModified, null, null);
+    }
+
+    private static void writeFile(InputStream in, Path path, byte[] buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the entry path against the root, making sure that neither the entry name, nor symbolic links extracted
+     * previously point outside of the root. Parent directories are created as needed.
+     */
+    private static Path resolve(Path root, String name, Set<Path> checkedDirs) throws IOException {
+        Path path = root.resolve(name).normalize();
+        if (path.equals(root) || !path.startsWith(root)) {
+            throw new IOException(MessageFormat.format("Entry {0} is outside of the target root", name));
+        }
+
+        Path parent = path.getParent();
+        if (checkedDirs.add(parent)) {
+            // An existing link to a directory is accepted as a parent, as long as it leads to a place inside the root
+            Path dir = Files.isDirectory(parent) ? parent : Files.createDirectories(parent);
+            if (!dir.toRealPath().startsWith(root)) {
+                throw new IOException(MessageFormat.format("Entry {0} is outside of the target root", name));
+            }
+        }
+
+        return path;
+    }
+
+    private static String getName(TarArchiveEntry entry) {
+        String name = entry.getName();
+        if (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    private static boolean isXZ(InputStream in) throws IOException {
+        byte[] magic = new byte[XZ_MAGIC.length];
+        in.mark(magic.length);
+        int n = 0;
+        for (int r; (n < magic.length) && ((r = in.read(magic, n, magic.length - n)) >= 0); ) {
+            n += r;
+        }
+        in.reset();
+
+        return (n == magic.length) && Arrays.equals(magic, XZ_MAGIC);
+    }
+
+    private static Set<PosixFilePermission> toPermissions(int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0; i < MODE_BITS.length; i++) {
+            if ((mode & MODE_BITS[i]) != 0) {
+                permissions.add(PERMISSIONS[i]);
+            }
+        }
+
+        return permissions;
+    }
+}
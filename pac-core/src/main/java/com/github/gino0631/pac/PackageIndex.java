@@ -0,0 +1,168 @@
+package com.github.gino0631.pac;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of a seekable package, mapping entry names to the XZ blocks containing them and to the positions of their data
+ * within the uncompressed archive.
+ */
+public final class PackageIndex {
+    private static final int MAGIC = 0x50414349;    // "PACI"
+    private static final int VERSION = 2;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> entriesByName = new HashMap<>();
+
+    /**
+     * Location of an entry within the package.
+     */
+    public static final class Entry {
+        private final String name;
+        private final long blockOffset;
+        private final long blockPosition;
+        private final long offset;
+        private final long size;
+
+        Entry(String name, long blockOffset, long blockPosition, long offset, long size) {
+            this.name = name;
+            this.blockOffset = blockOffset;
+            this.blockPosition = blockPosition;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * Returns the name of the entry, as written to the archive.
+         *
+         * @return entry name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the offset of the XZ block containing the entry.
+         *
+         * @return offset of the block header within the package file
+         */
+        public long getBlockOffset() {
+            return blockOffset;
+        }
+
+        /**
+         * Returns the position of the XZ block containing the entry.
+         *
+         * @return offset of the block data within the uncompressed archive
+         */
+        public long getBlockPosition() {
+            return blockPosition;
+        }
+
+        /**
+         * Returns the position of the entry data.
+         *
+         * @return offset of the data within the uncompressed archive
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the size of the entry data.
+         *
+         * @return number of bytes
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    PackageIndex() {
+    }
+
+    /**
+     * Reads an index previously written with {@link #writeTo(OutputStream)}.
+     *
+     * @param inputStream stream to read from
+     * @return index
+     * @throws IOException if an I/O error occurs, or the stream does not contain a package index
+     */
+    public static PackageIndex readFrom(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+            throw new IOException("Not a package index");
+        }
+
+        PackageIndex index = new PackageIndex();
+        for (int i = in.readInt(); i > 0; i--) {
+            index.add(new Entry(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+        }
+
+        return index;
+    }
+
+    /**
+     * Writes the index to a stream. The stream is not closed.
+     *
+     * @param outputStream stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+
+        for (Entry entry : entries) {
+            out.writeUTF(entry.name);
+            out.writeLong(entry.blockOffset);
+            out.writeLong(entry.blockPosition);
+            out.writeLong(entry.offset);
+            out.writeLong(entry.size);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Returns the entry with the given name.
+     *
+     * @param name entry name (directory names end with a slash)
+     * @return entry, or {@code null} if not found
+     */
+    public Entry get(String name) {
+        return entriesByName.get(name);
+    }
+
+    /**
+     * Returns all entries, in the order they appear in the package.
+     *
+     * @return entries
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Adds entries of another index, which describes a part of the package starting at the given offsets.
+     */
+    void addAll(PackageIndex index, long blockOffset, long offset) {
+        for (Entry entry : index.entries) {
+            add(new Entry(entry.name, blockOffset + entry.blockOffset, offset + entry.blockPosition, offset + entry.offset, entry.size));
+        }
+    }
+
+    void add(Entry entry) {
+        entries.add(entry);
+        entriesByName.put(entry.getName(), entry);
+    }
+}
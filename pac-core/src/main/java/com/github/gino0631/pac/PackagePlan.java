@@ -0,0 +1,211 @@
+package com.github.gino0631.pac;
+
+import com.github.gino0631.common.io.IoStreams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Contents and metadata of a package, as they would be written by {@link PackageBuilder#build(java.io.OutputStream)}.
+ */
+public final class PackagePlan {
+    private final byte[] pkginfo;
+    private final byte[] mtree;
+    private final long installedSize;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * A file, directory or symbolic link to be installed.
+     */
+    public static final class Entry {
+        private final String name;
+        private final String type;
+        private final long size;
+        private final int mode;
+        private final long userId;
+        private final long groupId;
+        private final String link;
+        private final String md5Digest;
+        private final String sha256Digest;
+
+        Entry(PackageEntry entry) {
+            this.name = entry.getName();
+            this.type = entry.getFileType().getCode();
+            this.size = entry.getSize();
+            this.mode = entry.getMode() & FilePermissions.MODE_MASK;
+            this.userId = entry.getLongUserId();
+            this.groupId = entry.getLongGroupId();
+            this.link = entry.isSymbolicLink() ? entry.getLinkName() : null;
+            this.md5Digest = entry.getMd5Digest();
+            this.sha256Digest = entry.getSha256Digest();
+        }
+
+        /**
+         * Returns the path of the entry (directory names end with a slash).
+         *
+         * @return entry name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the type of the entry, as specified in {@code .MTREE}.
+         *
+         * @return {@code file}, {@code dir} or {@code link}
+         */
+        public String getType() {
+            return type;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns permission bits of the entry.
+         *
+         * @return mode
+         */
+        public int getMode() {
+            return mode;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public long getGroupId() {
+            return groupId;
+        }
+
+        /**
+         * Returns the target of the symbolic link.
+         *
+         * @return link target, or {@code null} if the entry is not a symbolic link
+         */
+        public String getLink() {
+            return link;
+        }
+
+        /**
+         * Returns the MD5 digest of the file contents.
+         *
+         * @return lowercase hexadecimal digest, or {@code null} if not computed
+         */
+        public String getMd5Digest() {
+            return md5Digest;
+        }
+
+        /**
+         * Returns the SHA-256 digest of the file contents.
+         *
+         * @return lowercase hexadecimal digest, or {@code null} if not computed
+         */
+        public String getSha256Digest() {
+            return sha256Digest;
+        }
+    }
+
+    PackagePlan(Collection<PackageEntry> packageEntries) throws IOException {
+        byte[] pkginfo = null;
+        byte[] mtree = null;
+
+        for (PackageEntry entry : packageEntries) {
+            if (entry.getName().equals(PackageBuilder.PKGINFO_NAME)) {
+                pkginfo = readAll(entry.newInputStream());
+
+            } else if (entry.getName().equals(PackageBuilder.MTREE_NAME)) {
+                mtree = readAll(new GZIPInputStream(entry.newInputStream()));
+
+            } else if (!PackageBuilder.isMetadata(entry)) {
+                entries.add(new Entry(entry));
+            }
+        }
+
+        this.pkginfo = pkginfo;
+        this.mtree = mtree;
+        this.installedSize = PackageBuilder.getInstalledSize(packageEntries);
+    }
+
+    /**
+     * Returns the contents of {@code .PKGINFO}.
+     *
+     * @return UTF-8 encoded text
+     */
+    public byte[] getPkginfo() {
+        return pkginfo.clone();
+    }
+
+    /**
+     * Returns the contents of {@code .MTREE}, uncompressed.
+     *
+     * @return UTF-8 encoded text
+     */
+    public byte[] getMtree() {
+        return mtree.clone();
+    }
+
+    /**
+     * Returns the installed size of the package, as specified in {@code .PKGINFO}.
+     *
+     * @return number of bytes
+     */
+    public long getInstalledSize() {
+        return installedSize;
+    }
+
+    /**
+     * Returns the payload entries, in the lexical order of their paths.
+     *
+     * @return entries
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Writes the listing of payload entries, one per line, with tab separated type, octal mode, user ID, group ID, size,
+     * SHA-256 digest ({@code -} if not computed), name, and link target (for symbolic links only).
+     *
+     * @param writer writer to write the listing to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeListing(Writer writer) throws IOException {
+        for (Entry entry : entries) {
+            writer.write(entry.getType());
+            writer.write('\t');
+            writer.write(String.format("%04o", entry.getMode()));
+            writer.write('\t');
+            writer.write(Long.toString(entry.getUserId()));
+            writer.write('\t');
+            writer.write(Long.toString(entry.getGroupId()));
+            writer.write('\t');
+            writer.write(Long.toString(entry.getSize()));
+            writer.write('\t');
+            writer.write((entry.getSha256Digest() != null) ? entry.getSha256Digest() : "-");
+            writer.write('\t');
+            writer.write(entry.getName());
+            if (entry.getLink() != null) {
+                writer.write('\t');
+                writer.write(entry.getLink());
+            }
+            writer.write('\n');
+        }
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            IoStreams.copy(in, os);
+            return os.toByteArray();
+        }
+    }
+}
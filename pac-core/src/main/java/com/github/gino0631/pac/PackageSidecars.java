@@ -0,0 +1,119 @@
+package com.github.gino0631.pac;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes files accompanying a package: its detached signature ({@code .sig}), index ({@code .idx}) and checksums
+ * ({@code .sha256} and {@code .md5}, in the format of {@code sha256sum} and {@code md5sum} utilities).
+ */
+public final class PackageSidecars {
+    public static final String SIGNATURE_EXTENSION = "sig";
+    public static final String INDEX_EXTENSION = "idx";
+    public static final String SHA256_EXTENSION = "sha256";
+    public static final String MD5_EXTENSION = "md5";
+
+    private static final String[] EXTENSIONS = {SIGNATURE_EXTENSION, INDEX_EXTENSION, SHA256_EXTENSION, MD5_EXTENSION};
+
+    private PackageSidecars() {
+    }
+
+    /**
+     * Checks whether checksum files can be written with the given algorithm.
+     *
+     * @param algorithm {@code sha256} or {@code md5}
+     * @return {@code true} if supported
+     */
+    public static boolean isSupportedChecksum(String algorithm) {
+        return SHA256_EXTENSION.equals(algorithm) || MD5_EXTENSION.equals(algorithm);
+    }
+
+    /**
+     * Writes the signature and index of a package, if they were produced by the build, and the requested checksums.
+     * The file names are the package file name with the extension appended. If any of the files cannot be written,
+     * the ones written already are deleted. Files which are not produced this time (left over from an earlier build
+     * of the package, e.g. with signing enabled) are deleted as well.
+     *
+     * @param packageFile package file, which has been written already
+     * @param result      result of building the package
+     * @param checksums   checksum algorithms (see {@link #isSupportedChecksum(String)}), or {@code null}
+     * @return written files, by extension
+     * @throws IOException if an I/O error occurs
+     */
+    public static Map<String, Path> write(Path packageFile, BuildResult result, Collection<String> checksums) throws IOException {
+        Map<String, Path> sidecars = new LinkedHashMap<>();
+        if (result.getSignature() != null) {
+            sidecars.put(SIGNATURE_EXTENSION, getPath(packageFile, SIGNATURE_EXTENSION));
+        }
+        if (result.getIndex() != null) {
+            sidecars.put(INDEX_EXTENSION, getPath(packageFile, INDEX_EXTENSION));
+        }
+        for (String algorithm : (checksums != null) ? checksums : Collections.<String>emptyList()) {
+            if (!isSupportedChecksum(algorithm)) {
+                throw new IllegalArgumentException("Unsupported checksum algorithm " + algorithm);
+            }
+            sidecars.put(algorithm, getPath(packageFile, algorithm));
+        }
+
+        for (String extension : EXTENSIONS) {
+            if (!sidecars.containsKey(extension)) {
+                Files.deleteIfExists(getPath(packageFile, extension));
+            }
+        }
+
+        boolean succeeded = false;
+
+        try {
+            if (sidecars.containsKey(SIGNATURE_EXTENSION)) {
+                Files.write(sidecars.get(SIGNATURE_EXTENSION), result.getSignature());
+            }
+
+            if (sidecars.containsKey(INDEX_EXTENSION)) {
+                try (OutputStream os = Files.newOutputStream(sidecars.get(INDEX_EXTENSION))) {
+                    result.getIndex().writeTo(os);
+                }
+            }
+
+            if (sidecars.containsKey(SHA256_EXTENSION)) {
+                writeChecksum(sidecars.get(SHA256_EXTENSION), result.getSha256Digest(), packageFile);
+            }
+
+            if (sidecars.containsKey(MD5_EXTENSION)) {
+                writeChecksum(sidecars.get(MD5_EXTENSION), result.getMd5Digest(), packageFile);
+            }
+
+            succeeded = true;
+
+        } finally {
+            if (!succeeded) {
+                for (Path sidecar : sidecars.values()) {
+                    Files.deleteIfExists(sidecar);
+                }
+            }
+        }
+
+        return sidecars;
+    }
+
+    /**
+     * Returns the path of a file accompanying the package.
+     *
+     * @param packageFile package file
+     * @param extension   extension of the accompanying file
+     * @return path in the same directory as the package
+     */
+    public static Path getPath(Path packageFile, String extension) {
+        return packageFile.resolveSibling(packageFile.getFileName() + "." + extension);
+    }
+
+    private static void writeChecksum(Path path, String digest, Path packageFile) throws IOException {
+        Files.write(path, (digest + "  " + packageFile.getFileName() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
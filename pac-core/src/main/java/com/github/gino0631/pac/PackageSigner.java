@@ -0,0 +1,168 @@
+package com.github.gino0631.pac;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureSubpacketGenerator;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Produces OpenPGP detached signatures (as expected by pacman in {@code .sig} files) for packages being built.
+ */
+public final class PackageSigner {
+    private final PGPSecretKey secretKey;
+    private final PGPPrivateKey privateKey;
+
+    private PackageSigner(PGPSecretKey secretKey, PGPPrivateKey privateKey) {
+        this.secretKey = secretKey;
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * Creates a signer using a key from a secret key ring file (binary or ASCII armored), such as the one
+     * produced by {@code gpg --export-secret-keys}.
+     *
+     * @param keyRing    secret key ring file
+     * @param keyId      key ID, fingerprint (or their suffix) or a part of user ID identifying the key;
+     *                   if {@code null}, the first signing key is used
+     * @param passphrase passphrase protecting the key, or {@code null} if the key is not protected
+     * @return signer
+     * @throws IOException if the key ring cannot be read, or the key cannot be found or extracted
+     */
+    public static PackageSigner fromKeyRing(Path keyRing, String keyId, char[] passphrase) throws IOException {
+        PGPSecretKeyRingCollection keyRings;
+
+        try (InputStream is = PGPUtil.getDecoderStream(Files.newInputStream(keyRing))) {
+            keyRings = new PGPSecretKeyRingCollection(is, new BcKeyFingerprintCalculator());
+
+        } catch (PGPException e) {
+            throw new IOException(MessageFormat.format("Unable to read key ring {0}", keyRing), e);
+        }
+
+        PGPSecretKey secretKey = findSigningKey(keyRings, keyId);
+        if (secretKey == null) {
+            throw new IOException((keyId != null)
+                    ? MessageFormat.format("Signing key {0} not found in {1}", keyId, keyRing)
+                    : MessageFormat.format("No signing keys found in {0}", keyRing));
+        }
+
+        try {
+            PGPPrivateKey privateKey = secretKey.extractPrivateKey(
+                    new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider())
+                            .build((passphrase != null) ? passphrase : new char[0]));
+
+            return new PackageSigner(secretKey, privateKey);
+
+        } catch (PGPException e) {
+            throw new IOException(MessageFormat.format("Unable to extract signing key from {0}", keyRing), e);
+        }
+    }
+
+    SigningOutputStream newSigningStream(OutputStream outputStream) {
+        PGPSignatureGenerator generator = new PGPSignatureGenerator(
+                new BcPGPContentSignerBuilder(secretKey.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA256));
+
+        try {
+            generator.init(PGPSignature.BINARY_DOCUMENT, privateKey);
+
+        } catch (PGPException e) {
+            throw new IllegalStateException(e);
+        }
+
+        PGPSignatureSubpacketGenerator subpackets = new PGPSignatureSubpacketGenerator();
+        subpackets.setSignatureCreationTime(false, new Date());
+        subpackets.setIssuerFingerprint(false, secretKey);
+        generator.setHashedSubpackets(subpackets.generate());
+
+        return new SigningOutputStream(outputStream, generator);
+    }
+
+    private static PGPSecretKey findSigningKey(PGPSecretKeyRingCollection keyRings, String keyId) {
+        String id = (keyId != null) ? normalizeKeyId(keyId) : null;
+
+        for (Iterator<PGPSecretKeyRing> r = keyRings.getKeyRings(); r.hasNext(); ) {
+            PGPSecretKeyRing keyRing = r.next();
+            boolean userIdMatches = (keyId != null) && matchesUserId(keyRing, keyId);
+
+            for (Iterator<PGPSecretKey> k = keyRing.getSecretKeys(); k.hasNext(); ) {
+                PGPSecretKey key = k.next();
+
+                if (key.isSigningKey() && !key.isPrivateKeyEmpty()) {
+                    if ((keyId == null) || userIdMatches
+                            || String.format("%016x", key.getKeyID()).endsWith(id)
+                            || Hex.toHexString(key.getPublicKey().getFingerprint()).endsWith(id)) {
+                        return key;
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean matchesUserId(PGPSecretKeyRing keyRing, String text) {
+        for (Iterator<String> u = keyRing.getPublicKey().getUserIDs(); u.hasNext(); ) {
+            if (u.next().contains(text)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String normalizeKeyId(String keyId) {
+        String id = keyId.replace(" ", "").toLowerCase(Locale.ROOT);
+        return id.startsWith("0x") ? id.substring(2) : id;
+    }
+
+    static final class SigningOutputStream extends FilterOutputStream {
+        private final PGPSignatureGenerator generator;
+
+        private SigningOutputStream(OutputStream out, PGPSignatureGenerator generator) {
+            super(out);
+            this.generator = generator;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            generator.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            generator.update(b, off, len);
+        }
+
+        byte[] getSignature() throws IOException {
+            try {
+                return generator.generate().getEncoded();
+
+            } catch (PGPException e) {
+                throw new IOException("Unable to generate signature", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.gino0631.pac;
+
+import org.tukaani.xz.CorruptedInputException;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.tukaani.xz.SingleXZInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Decompresses an XZ file consisting of multiple blocks, decompressing several blocks ahead in parallel.
+ * Each block is decompressed into memory, so the blocks are expected to be reasonably small; the total size of blocks
+ * being decompressed ahead is limited.
+ * <p>
+ * The XZ index is parsed only once; each block is then read on its own, and decoded as a single-block stream.
+ */
+final class ParallelXZInputStream extends InputStream {
+    private static final byte[] XZ_MAGIC = {(byte) 0xfd, '7', 'z', 'X', 'Z', 0};
+
+    private final FileChannel channel;
+    private final ExecutorService executor;
+    private final int maxBlocks;
+    private final long maxBytes;
+    private final long[] blockCompPos;
+    private final long[] blockCompSize;
+    private final int[] blockSize;
+    private final int[] blockCheckType;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final Deque<Integer> pendingSizes = new ArrayDeque<>();
+    private long pendingBytes;
+    private int nextBlock;
+    private byte[] block = new byte[0];
+    private int pos;
+
+    /**
+     * Creates a stream reading blocks described by the index of the given stream, which can be closed afterwards.
+     *
+     * @param maxBlocks maximum number of blocks to decompress ahead
+     * @param maxBytes  maximum total uncompressed size of blocks to decompress ahead (at least one block is always decompressed)
+     */
+    ParallelXZInputStream(Path file, SeekableXZInputStream xz, ExecutorService executor, int maxBlocks, long maxBytes) throws IOException {
+        int blockCount = xz.getBlockCount();
+
+        this.executor = executor;
+        this.maxBlocks = maxBlocks;
+        this.maxBytes = maxBytes;
+        this.blockCompPos = new long[blockCount];
+        this.blockCompSize = new long[blockCount];
+        this.blockSize = new int[blockCount];
+        this.blockCheckType = new int[blockCount];
+
+        for (int i = 0; i < blockCount; i++) {
+            blockCompPos[i] = xz.getBlockCompPos(i);
+            blockCompSize[i] = xz.getBlockCompSize(i);
+            blockSize[i] = Math.toIntExact(xz.getBlockSize(i));
+            blockCheckType[i] = xz.getBlockCheckType(i);
+        }
+
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextBlock() ? (block[pos++] & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextBlock()) {
+            return -1;
+        }
+
+        int n = Math.min(len, block.length - pos);
+        System.arraycopy(block, pos, b, off, n);
+        pos += n;
+
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        pendingSizes.clear();
+        pendingBytes = 0;
+
+        channel.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (pos == block.length) {
+            // Keep the workers busy with the following blocks, as long as they fit into the limits
+            while ((nextBlock < blockSize.length) && (pending.size() < maxBlocks)
+                    && (pending.isEmpty() || (pendingBytes + blockSize[nextBlock] <= maxBytes))) {
+                int blockNumber = nextBlock++;
+                pending.add(executor.submit(() -> decompress(blockNumber)));
+                pendingSizes.add(blockSize[blockNumber]);
+                pendingBytes += blockSize[blockNumber];
+            }
+
+            if (pending.isEmpty()) {
+                return false;
+            }
+
+            try {
+                block = pending.remove().get();
+                pendingBytes -= pendingSizes.remove();
+                pos = 0;
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+
+            } catch (ExecutionException e) {
+                throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+
+        return true;
+    }
+
+    private byte[] decompress(int blockNumber) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(Math.toIntExact(blockCompSize[blockNumber]));
+        for (long position = blockCompPos[blockNumber]; compressed.hasRemaining(); ) {
+            int n = channel.read(compressed, position + compressed.position());
+            if (n < 0) {
+                throw new EOFException();
+            }
+        }
+
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(createStreamHeader(blockCheckType[blockNumber])),
+                new ByteArrayInputStream(compressed.array()));
+
+        try (SingleXZInputStream xz = new SingleXZInputStream(in)) {
+            byte[] data = new byte[blockSize[blockNumber]];
+            new DataInputStream(xz).readFully(data);
+
+            // Reading past the end of the block verifies its padding and check; then the stream is expected to end,
+            // as it has neither further blocks nor an index
+            try {
+                xz.read();
+                throw new CorruptedInputException("Block is followed by unexpected data");
+
+            } catch (EOFException e) {
+                return data;
+            }
+        }
+    }
+
+    private static byte[] createStreamHeader(int checkType) {
+        byte[] header = new byte[XZ_MAGIC.length + 6];
+        System.arraycopy(XZ_MAGIC, 0, header, 0, XZ_MAGIC.length);
+        header[XZ_MAGIC.length + 1] = (byte) checkType;
+
+        CRC32 crc = new CRC32();
+        crc.update(header, XZ_MAGIC.length, 2);
+        long value = crc.getValue();
+        for (int i = 0; i < 4; i++) {
+            header[XZ_MAGIC.length + 2 + i] = (byte) (value >>> (8 * i));
+        }
+
+        return header;
+    }
+}
@@ -0,0 +1,222 @@
+package com.github.gino0631.pac;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads contents of entries on a separate thread, passing them in chunks both to a hashing thread, which sets digests
+ * of the entries, and to the consumer (compressing them). Chunks are read into a fixed pool of buffers, and queues
+ * between the stages are bounded, so the stages which are ahead wait for the slower ones, and memory use does not grow.
+ */
+final class PipelinedReader implements Closeable {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int BUFFER_COUNT = 16;
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final List<PackageEntry> entries;
+    private final Digester digester;
+    private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<Chunk> hashQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<Chunk> consumerQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "pac-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Future<?> hashing;
+
+    /**
+     * A piece of entry contents; the buffer is returned to the pool once both the hashing stage and the consumer are done with it.
+     * Chunks without buffers mark the end of entry contents, or a failure to read them.
+     */
+    private final class Chunk {
+        private final PackageEntry entry;
+        private final byte[] buffer;
+        private final int length;
+        private final IOException failure;
+        private final AtomicInteger references = new AtomicInteger(2);
+
+        Chunk(PackageEntry entry, byte[] buffer, int length, IOException failure) {
+            this.entry = entry;
+            this.buffer = buffer;
+            this.length = length;
+            this.failure = failure;
+        }
+
+        boolean isEnd() {
+            return buffer == null;
+        }
+
+        void release() {
+            if ((references.decrementAndGet() == 0) && (buffer != null)) {
+                freeBuffers.add(buffer);
+            }
+        }
+    }
+
+    PipelinedReader(List<PackageEntry> entries, Digester digester) {
+        this.entries = entries;
+        this.digester = digester;
+
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            freeBuffers.add(new byte[BUFFER_SIZE]);
+        }
+
+        executor.execute(this::read);
+        hashing = executor.submit(this::hash);
+    }
+
+    /**
+     * Returns the contents of the next entry. Entries are to be requested in the order they were passed to the constructor,
+     * and each stream is to be read to the end before requesting the next one.
+     */
+    InputStream next(PackageEntry entry) {
+        return new InputStream() {
+            private Chunk chunk;
+            private int pos;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) > 0) ? (b[0] & 0xff) : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if ((chunk != null) && (pos == chunk.length) && !chunk.isEnd()) {
+                    chunk.release();
+                    chunk = null;
+                }
+
+                if (chunk == null) {
+                    chunk = take(consumerQueue);
+                    pos = 0;
+
+                    if (chunk.entry != entry) {
+                        throw new IllegalStateException("Entries are requested out of order");
+                    }
+                    if (chunk.failure != null) {
+                        throw chunk.failure;
+                    }
+                }
+
+                if (chunk.isEnd()) {
+                    return -1;
+                }
+
+                int n = Math.min(len, chunk.length - pos);
+                System.arraycopy(chunk.buffer, pos, b, off, n);
+                pos += n;
+
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Waits for all digests to be computed.
+     */
+    void finish() throws IOException {
+        try {
+            hashing.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void read() {
+        try {
+            for (PackageEntry entry : entries) {
+                if (entry.hasContents()) {
+                    try (InputStream in = entry.newInputStream()) {
+                        while (true) {
+                            byte[] buffer = freeBuffers.take();
+                            int n = readFully(in, buffer);
+                            if (n <= 0) {
+                                freeBuffers.add(buffer);
+                                break;
+                            }
+
+                            publish(new Chunk(entry, buffer, n, null));
+                        }
+
+                    } catch (IOException e) {
+                        publish(new Chunk(entry, null, 0, e));
+                        return;
+                    }
+                }
+
+                publish(new Chunk(entry, null, 0, null));
+            }
+
+        } catch (InterruptedException e) {
+            // The build is cancelled
+        }
+    }
+
+    private Void hash() throws IOException, InterruptedException {
+        for (int i = 0; i < entries.size(); ) {
+            Chunk chunk = hashQueue.take();
+            if (chunk.failure != null) {
+                throw chunk.failure;
+            }
+
+            if (chunk.isEnd()) {
+                if (chunk.entry.hasContents()) {
+                    chunk.entry.setDigests(digester.finish());
+                }
+                i++;
+
+            } else {
+                digester.update(chunk.buffer, 0, chunk.length);
+                chunk.release();
+            }
+        }
+
+        return null;
+    }
+
+    private void publish(Chunk chunk) throws InterruptedException {
+        hashQueue.put(chunk);
+        consumerQueue.put(chunk);
+    }
+
+    private static Chunk take(BlockingQueue<Chunk> queue) throws InterruptedIOException {
+        try {
+            return queue.take();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int n = 0;
+        for (int r; (n < buffer.length) && ((r = in.read(buffer, n, buffer.length - n)) >= 0); ) {
+            n += r;
+        }
+
+        return n;
+    }
+}
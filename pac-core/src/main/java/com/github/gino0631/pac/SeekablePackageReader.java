@@ -0,0 +1,89 @@
+package com.github.gino0631.pac;
+
+import com.github.gino0631.common.io.IoStreams;
+import org.tukaani.xz.SingleXZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads individual entries of a package built with a block size set (see {@link PackageBuilder#setBlockSize(long)}),
+ * decompressing only the XZ block which contains the requested entry. The block is located using the index alone,
+ * so the XZ index of the package is not read. Instances are not thread-safe.
+ */
+public final class SeekablePackageReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PackageIndex index;
+    private final FileChannel channel;
+    private final byte[] streamHeader = new byte[PackageBuilder.XZ_STREAM_HEADER_SIZE];
+
+    public SeekablePackageReader(Path file, PackageIndex index) throws IOException {
+        this.index = index;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        try {
+            // All streams of a package are written with the same flags, so the header of the first one applies to every block
+            ByteBuffer bb = ByteBuffer.wrap(streamHeader);
+            while (bb.hasRemaining()) {
+                if (channel.read(bb, bb.position()) < 0) {
+                    throw new EOFException("Not an XZ file");
+                }
+            }
+
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public PackageIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns a stream to read the data of the given entry from. The stream is valid until another entry is requested,
+     * or the reader is closed.
+     *
+     * @param name entry name
+     * @return stream, or {@code null} if there is no such entry
+     * @throws IOException if an I/O error occurs
+     */
+    public InputStream getInputStream(String name) throws IOException {
+        PackageIndex.Entry entry = index.get(name);
+        if (entry == null) {
+            return null;
+        }
+
+        // Decode the block as if it were the first one of a stream; reading stops at the end of the entry data
+        channel.position(entry.getBlockOffset());
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(streamHeader),
+                new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+        SingleXZInputStream xz = new SingleXZInputStream(in);
+
+        for (long remaining = entry.getOffset() - entry.getBlockPosition(); remaining > 0; ) {
+            long n = xz.skip(remaining);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            remaining -= n;
+        }
+
+        return IoStreams.closeProtect(IoStreams.limit(xz, entry.getSize()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.gino0631.pac;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalPackageBuilderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRebuild() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        Path dir = Files.createDirectories(root.resolve("opt/test"));
+        Files.write(dir.resolve("a.txt"), "Hello".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("b.txt"), "World".getBytes(StandardCharsets.UTF_8));
+
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+        IncrementalPackageBuilder builder = new IncrementalPackageBuilder(PackageBuilderTest.newBuilder(root)
+                .addSymlink("opt/link/c.txt", "/opt/test/b.txt"));
+
+        build(builder, pkg);
+        assertEquals(6, builder.getChangedEntryCount());
+        assertEquals(1, builder.getCompressedBlockCount());
+
+        build(builder, pkg);
+        assertEquals(0, builder.getChangedEntryCount());
+        assertEquals(0, builder.getCompressedBlockCount());
+
+        Files.write(dir.resolve("b.txt"), "World!".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(dir.resolve("b.txt"), FileTime.fromMillis(0));
+        build(builder, pkg);
+        assertEquals(1, builder.getChangedEntryCount());
+        assertEquals(1, builder.getCompressedBlockCount());
+
+        assertEquals(Arrays.asList(".MTREE", ".PKGINFO", "opt/", "opt/link/", "opt/link/c.txt", "opt/test/", "opt/test/a.txt", "opt/test/b.txt"),
+                PackageBuilderTest.readNames(pkg));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        for (int i = 0; i < 16; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 2000; j++) {
+                text.append("file ").append(i).append(" line ").append(j).append('\n');
+            }
+            Files.write(root.resolve(i + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+        IncrementalPackageBuilder builder = new IncrementalPackageBuilder(PackageBuilderTest.newBuilder(root).setBlockSize(65536));
+        BuildResult result;
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            result = builder.build(os);
+        }
+
+        assertTrue(builder.getBlockCount() > 1);
+        try (SeekablePackageReader reader = new SeekablePackageReader(pkg, result.getIndex())) {
+            for (int i = 0; i < 16; i++) {
+                assertArrayEquals(Files.readAllBytes(root.resolve(i + ".txt")), readAll(reader.getInputStream(i + ".txt")));
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) >= 0; ) {
+            os.write(buffer, 0, n);
+        }
+
+        return os.toByteArray();
+    }
+
+    private static void build(IncrementalPackageBuilder builder, Path pkg) throws Exception {
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            builder.build(os);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.gino0631.pac;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MtreeReaderTest {
+    @Test
+    public void testReadWritten() throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        new MtreeWriter(os)
+                .writeHeader()
+                .writeEntry("opt/testąš 1.txt", MtreeWriter.FileType.FILE, 123, Instant.parse("2016-06-29T22:20:30.999Z"),
+                        FilePermissions.DEFAULT_FILE_MODE, 0, 0, null, "abc", "def")
+                .writeEntry("opt/lib.so", MtreeWriter.FileType.LINK, 0, Instant.parse("2016-06-29T22:20:30.999Z"),
+                        FilePermissions.DEFAULT_LINK_MODE, 0, 0, "lib.so.0.0")
+                .writeEntry("opt/", MtreeWriter.FileType.DIR, 0, Instant.ofEpochSecond(1467238830),
+                        FilePermissions.DEFAULT_DIRECTORY_MODE, 1000, 100, null)
+                .flush();
+
+        MtreeReader reader = new MtreeReader(new ByteArrayInputStream(os.toByteArray()));
+
+        MtreeReader.Entry file = reader.readEntry();
+        assertEquals("opt/testąš 1.txt", file.getName());
+        assertEquals(MtreeWriter.FileType.FILE, file.getFileType());
+        assertEquals(123, file.getSize());
+        assertEquals(Instant.parse("2016-06-29T22:20:30.999Z"), file.getLastModified());
+        assertEquals(FilePermissions.DEFAULT_FILE_MODE, file.getMode());
+        assertEquals("abc", file.getMd5Digest());
+        assertEquals("def", file.getSha256Digest());
+
+        MtreeReader.Entry link = reader.readEntry();
+        assertEquals("opt/lib.so", link.getName());
+        assertEquals(MtreeWriter.FileType.LINK, link.getFileType());
+        assertEquals(FilePermissions.DEFAULT_LINK_MODE, link.getMode());
+        assertEquals("lib.so.0.0", link.getLink());
+
+        MtreeReader.Entry dir = reader.readEntry();
+        assertEquals("opt", dir.getName());
+        assertEquals(MtreeWriter.FileType.DIR, dir.getFileType());
+        assertEquals(1000, dir.getUserId());
+        assertEquals(100, dir.getGroupId());
+
+        assertNull(reader.readEntry());
+    }
+
+    @Test
+    public void testReadRelative() throws Exception {
+        String spec = "#mtree\n"
+                + "/set type=file mode=0644\n"
+                + ". type=dir mode=0755\n"
+                + "usr type=dir\n"
+                + "    bin type=dir\n"
+                + "        sh mode=0755 \\\n"
+                + "            size=10\n"
+                + "    ..\n"
+                + "    README\n"
+                + "..\n";
+
+        MtreeReader reader = new MtreeReader(new ByteArrayInputStream(spec.getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("usr", reader.readEntry().getName());
+        assertEquals("usr/bin", reader.readEntry().getName());
+
+        MtreeReader.Entry sh = reader.readEntry();
+        assertEquals("usr/bin/sh", sh.getName());
+        assertEquals(0755, sh.getMode());
+        assertEquals(10, sh.getSize());
+
+        MtreeReader.Entry readme = reader.readEntry();
+        assertEquals("usr/README", readme.getName());
+        assertEquals(0644, readme.getMode());
+        assertEquals(MtreeWriter.FileType.FILE, readme.getFileType());
+
+        assertNull(reader.readEntry());
+    }
+}
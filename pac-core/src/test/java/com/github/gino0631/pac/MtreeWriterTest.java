@@ -2,7 +2,8 @@ package com.github.gino0631.pac;
 
 import org.junit.Test;
 
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 
 import static org.junit.Assert.assertEquals;
@@ -10,19 +11,26 @@ import static org.junit.Assert.assertEquals;
 public class MtreeWriterTest {
     @Test
     public void testWriteEntry() throws Exception {
-        StringWriter sw = new StringWriter();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
 
-        MtreeWriter mtreeWriter = new MtreeWriter(sw)
+        new MtreeWriter(os)
                 .writeHeader()
                 .writeEntry("opt/testąš.txt", MtreeWriter.FileType.FILE, 123, Instant.parse("2016-06-29T22:20:30.999Z"),
                         FilePermissions.DEFAULT_FILE_MODE, 0, 0, null)
                 .writeEntry("opt/lib.so", MtreeWriter.FileType.LINK, 0, Instant.parse("2016-06-29T22:20:30.999Z"),
-                        FilePermissions.DEFAULT_LINK_MODE, 0, 0, "/opt/lib.so.0.0");
+                        FilePermissions.DEFAULT_LINK_MODE, 0, 0, "/opt/lib.so.0.0")
+                .writeEntry("opt/my dir/", MtreeWriter.FileType.DIR, 0, Instant.ofEpochSecond(1467238830),
+                        FilePermissions.DEFAULT_DIRECTORY_MODE, 1000, 100, null)
+                .writeEntry("opt/a.txt", MtreeWriter.FileType.FILE, 1, Instant.ofEpochSecond(1467238830),
+                        FilePermissions.DEFAULT_FILE_MODE, 0, 0, null, "md5", "sha256")
+                .flush();
 
-        String[] lines = sw.toString().split("\n");
-        assertEquals(4, lines.length);
+        String[] lines = new String(os.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(6, lines.length);
         assertEquals("#mtree", lines[0]);
         assertEquals("./opt/test\\304\\205\\305\\241.txt time=1467238830.999000000 size=123", lines[2]);
         assertEquals("./opt/lib.so time=1467238830.999000000 mode=777 type=link link=/opt/lib.so.0.0", lines[3]);
+        assertEquals("./opt/my\\040dir time=1467238830.0 mode=755 uid=1000 gid=100 type=dir", lines[4]);
+        assertEquals("./opt/a.txt time=1467238830.0 size=1 md5digest=md5 sha256digest=sha256", lines[5]);
     }
 }
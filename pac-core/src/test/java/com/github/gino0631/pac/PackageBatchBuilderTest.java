@@ -0,0 +1,53 @@
+package com.github.gino0631.pac;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackageBatchBuilderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBuild() throws Exception {
+        Path small = folder.newFolder("small").toPath();
+        Files.write(small.resolve("a.txt"), new byte[100]);
+        Path large = folder.newFolder("large").toPath();
+        Files.write(large.resolve("b.txt"), new byte[100000]);
+
+        Path out = folder.getRoot().toPath().resolve("out");
+        List<PackageBatchBuilder.Result> results = new PackageBatchBuilder(2)
+                .add("small", PackageBuilderTest.newBuilder(small), out.resolve("small.pkg.tar.xz"))
+                .add("broken", PackageBuilderTest.newBuilder(small).setPkgVer("1-0"), out.resolve("broken.pkg.tar.xz"))
+                .add("large", PackageBuilderTest.newBuilder(large), out.resolve("large.pkg.tar.xz"))
+                .build();
+
+        assertEquals(3, results.size());
+
+        PackageBatchBuilder.Result result = results.get(0);
+        assertEquals("small", result.getName());
+        assertNull(result.getFailure());
+        assertEquals(100, result.getInputSize());
+        assertEquals(Files.size(result.getOutputFile()), result.getBuildResult().getSize());
+
+        result = results.get(1);
+        assertEquals("broken", result.getName());
+        assertNotNull(result.getFailure());
+        assertFalse(Files.exists(result.getOutputFile()));
+
+        result = results.get(2);
+        assertEquals("large", result.getName());
+        assertEquals(100000, result.getInputSize());
+        assertTrue(Files.exists(result.getOutputFile()));
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.gino0631.pac;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compares package size and build time for different entry orders, compression settings and build modes.
+ * Not run as a part of the test suite; to run, execute the class with the test class path and a payload directory as an argument,
+ * optionally followed by the number of iterations.
+ */
+public class PackageBuilderBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PackageBuilderBenchmark <root directory> [iterations]");
+            System.exit(1);
+        }
+
+        Path root = Paths.get(args[0]);
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+
+        for (boolean pipelined : new boolean[]{false, true}) {
+            for (boolean adaptive : new boolean[]{false, true}) {
+                for (PackageBuilder.EntryOrder order : PackageBuilder.EntryOrder.values()) {
+                    PackageBuilder builder = PackageBuilderTest.newBuilder(root)
+                            .setEntryOrder(order)
+                            .setAdaptiveCompression(adaptive)
+                            .setPipelined(pipelined);
+
+                    long size = 0;
+                    long best = Long.MAX_VALUE;
+
+                    for (int i = 0; i < iterations; i++) {
+                        long start = System.nanoTime();
+                        size = builder.build(new NullOutputStream()).getSize();
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+
+                    System.out.printf("pipelined=%-5b order=%-9s adaptive=%-5b size=%,13d time=%,8d ms%n",
+                            pipelined, order, adaptive, size, best / 1000000);
+                }
+            }
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.gino0631.pac;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("OctalInteger")
+public class PackageBuilderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAdaptiveCompression() throws Exception {
+        Path root = createRoot();
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            newBuilder(root).setAdaptiveCompression(true).build(os);
+        }
+
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(pkg.toFile()))) {
+            assertEquals(2, xz.getBlockCount());
+        }
+
+        List<String> names = readNames(pkg);
+        assertEquals(".MTREE", names.get(0));
+        assertEquals("opt/test/random.bin", names.get(names.size() - 1));
+    }
+
+    @Test
+    public void testExtensionOrder() throws Exception {
+        Path root = createRoot();
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            newBuilder(root).setEntryOrder(PackageBuilder.EntryOrder.EXTENSION).build(os);
+        }
+
+        assertEquals(Arrays.asList(".MTREE", ".PKGINFO", "opt/", "opt/test/", "opt/test/random.bin", "opt/test/a.txt", "opt/test/z.txt"),
+                readNames(pkg));
+    }
+
+    @Test
+    public void testDigests() throws Exception {
+        Path root = createRoot();
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            newBuilder(root).setDigests(Collections.singleton(PackageBuilder.Digest.SHA256)).build(os);
+        }
+
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+                new SeekableXZInputStream(new SeekableFileInputStream(pkg.toFile())))) {
+            assertEquals(".MTREE", tar.getNextEntry().getName());
+
+            MtreeReader reader = new MtreeReader(new GZIPInputStream(tar));
+            for (MtreeReader.Entry entry; (entry = reader.readEntry()) != null; ) {
+                if (entry.getName().equals("opt/test/z.txt")) {
+                    assertNull(entry.getMd5Digest());
+                    assertEquals(DigestUtils.sha256Hex("Hello"), entry.getSha256Digest());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        Path root = createRoot();
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+
+        BuildResult result;
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            result = newBuilder(root).setPipelined(true).setAdaptiveCompression(true).setBlockSize(1).build(os);
+        }
+
+        assertEquals(Arrays.asList(".MTREE", ".PKGINFO", "opt/", "opt/test/", "opt/test/a.txt", "opt/test/z.txt", "opt/test/random.bin"),
+                readNames(pkg));
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(pkg)), result.getSha256Digest());
+
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+                new SeekableXZInputStream(new SeekableFileInputStream(pkg.toFile())))) {
+            assertEquals(".MTREE", tar.getNextEntry().getName());
+
+            MtreeReader reader = new MtreeReader(new GZIPInputStream(tar));
+            for (MtreeReader.Entry entry; (entry = reader.readEntry()) != null; ) {
+                if (entry.getName().equals("opt/test/random.bin")) {
+                    assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(root.resolve("opt/test/random.bin"))), entry.getSha256Digest());
+                }
+            }
+        }
+
+        try (SeekablePackageReader reader = new SeekablePackageReader(pkg, result.getIndex())) {
+            assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(root.resolve("opt/test/a.txt"))),
+                    DigestUtils.sha256Hex(reader.getInputStream("opt/test/a.txt")));
+            assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(root.resolve("opt/test/random.bin"))),
+                    DigestUtils.sha256Hex(reader.getInputStream("opt/test/random.bin")));
+        }
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        Path root = createRoot();
+
+        PackagePlan plan = newBuilder(root)
+                .setPermissionSupplier((name, isDirectory) -> new FilePermissions(isDirectory ? 0755 : 0600))
+                .setDigests(Collections.emptySet())
+                .plan();
+
+        long size = Files.size(root.resolve("opt/test/a.txt")) + 100000 + 5;
+        assertEquals(size, plan.getInstalledSize());
+        assertTrue(new String(plan.getPkginfo(), StandardCharsets.UTF_8).contains("size = " + size + "\n"));
+        assertFalse(new String(plan.getMtree(), StandardCharsets.UTF_8).contains("digest"));
+
+        StringWriter listing = new StringWriter();
+        plan.writeListing(listing);
+        assertEquals(Arrays.asList(
+                "dir\t0755\t0\t0\t0\t-\topt/",
+                "dir\t0755\t0\t0\t0\t-\topt/test/",
+                "file\t0600\t0\t0\t" + Files.size(root.resolve("opt/test/a.txt")) + "\t-\topt/test/a.txt",
+                "file\t0600\t0\t0\t100000\t-\topt/test/random.bin",
+                "file\t0600\t0\t0\t5\t-\topt/test/z.txt"), Arrays.asList(listing.toString().split("\n")));
+    }
+
+    static PackageBuilder newBuilder(Path root) {
+        return new PackageBuilder()
+                .setRootDir(root)
+                .setPkgName("test")
+                .setPkgVer("1.0")
+                .setPkgRel("1")
+                .setArch("any");
+    }
+
+    Path createRoot() throws IOException {
+        Path root = folder.newFolder("root").toPath();
+        Path dir = Files.createDirectories(root.resolve("opt/test"));
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        Files.write(dir.resolve("a.txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        byte[] random = new byte[100000];
+        new Random(0).nextBytes(random);
+        Files.write(dir.resolve("random.bin"), random);
+
+        Files.write(dir.resolve("z.txt"), "Hello".getBytes(StandardCharsets.UTF_8));
+
+        return root;
+    }
+
+    static List<String> readNames(Path pkg) throws IOException {
+        List<String> names = new ArrayList<>();
+
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(
+                new SeekableXZInputStream(new SeekableFileInputStream(pkg.toFile())))) {
+            for (TarArchiveEntry entry; (entry = tar.getNextEntry()) != null; ) {
+                names.add(entry.getName());
+            }
+        }
+
+        return names;
+    }
+}
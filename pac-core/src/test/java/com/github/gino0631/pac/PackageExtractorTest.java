@@ -0,0 +1,174 @@
+package com.github.gino0631.pac;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("OctalInteger")
+public class PackageExtractorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExtract() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        Path dir = Files.createDirectories(root.resolve("opt/test"));
+        for (int i = 0; i < 8; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 2000; j++) {
+                text.append("file ").append(i).append(" line ").append(j).append('\n');
+            }
+            Files.write(dir.resolve(i + ".sh"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            PackageBuilderTest.newBuilder(root)
+                    .setPermissionSupplier((name, isDirectory) -> new FilePermissions(isDirectory ? 0750 : 0700))
+                    .addSymlink("opt/link/0.sh", "/opt/test/0.sh")
+                    .setBlockSize(16384)
+                    .build(os);
+        }
+
+        Path target = folder.getRoot().toPath().resolve("target");
+        try (PackageExtractor extractor = new PackageExtractor(4)) {
+            extractor.extract(pkg, target);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            Path file = target.resolve("opt/test/" + i + ".sh");
+            assertArrayEquals(Files.readAllBytes(dir.resolve(i + ".sh")), Files.readAllBytes(file));
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+        }
+        assertEquals("rwxr-x---", PosixFilePermissions.toString(Files.getPosixFilePermissions(target.resolve("opt/test"))));
+        assertEquals(Paths.get("/opt/test/0.sh"), Files.readSymbolicLink(target.resolve("opt/link/0.sh")));
+        assertFalse(Files.exists(target.resolve(".PKGINFO")));
+        assertFalse(Files.exists(target.resolve(".MTREE")));
+    }
+
+    @Test
+    public void testExtractConcatenatedStreams() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        for (int i = 0; i < 8; i++) {
+            byte[] data = new byte[20000];
+            new Random(i).nextBytes(data);
+            Files.write(root.resolve(i + ".bin"), data);
+        }
+
+        // Pipelined packages consist of two XZ streams, each having its own blocks
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            PackageBuilderTest.newBuilder(root).setPipelined(true).setBlockSize(16384).build(os);
+        }
+
+        Path target = folder.getRoot().toPath().resolve("target");
+        try (PackageExtractor extractor = new PackageExtractor(4)) {
+            extractor.extract(pkg, target);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            assertArrayEquals(Files.readAllBytes(root.resolve(i + ".bin")), Files.readAllBytes(target.resolve(i + ".bin")));
+        }
+    }
+
+    @Test
+    public void testOutsideOfRoot() throws Exception {
+        Path pkg = folder.getRoot().toPath().resolve("evil.pkg.tar.xz");
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new XZOutputStream(Files.newOutputStream(pkg), new LZMA2Options()))) {
+            TarArchiveEntry entry = new TarArchiveEntry("../evil.txt", true);
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+        }
+
+        try (PackageExtractor extractor = new PackageExtractor()) {
+            extractor.extract(pkg, folder.getRoot().toPath().resolve("target"));
+            fail();
+
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("outside of the target root"));
+        }
+
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("evil.txt")));
+    }
+
+    @Test
+    public void testSymlinkReplacingFile() throws Exception {
+        Path victim = folder.newFile("victim.txt").toPath();
+        Files.setPosixFilePermissions(victim, PosixFilePermissions.fromString("rw-------"));
+
+        Path pkg = folder.getRoot().toPath().resolve("evil.pkg.tar.xz");
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new XZOutputStream(Files.newOutputStream(pkg), new LZMA2Options()))) {
+            TarArchiveEntry entry = new TarArchiveEntry("x");
+            entry.setMode(0100777);
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+
+            entry = new TarArchiveEntry("x", TarArchiveEntry.LF_SYMLINK);
+            entry.setLinkName(victim.toString());
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+        }
+
+        Path target = folder.getRoot().toPath().resolve("target");
+        try (PackageExtractor extractor = new PackageExtractor()) {
+            extractor.extract(pkg, target);
+        }
+
+        assertEquals(victim, Files.readSymbolicLink(target.resolve("x")));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(victim)));
+    }
+
+    @Test
+    public void testSymlinkToDirectory() throws Exception {
+        Path target = folder.newFolder("target").toPath();
+        Files.createDirectories(target.resolve("usr/bin"));
+        Files.createSymbolicLink(target.resolve("bin"), Paths.get("usr/bin"));
+        Path outside = folder.newFolder("outside").toPath();
+        Files.createSymbolicLink(target.resolve("opt"), outside);
+
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new XZOutputStream(Files.newOutputStream(pkg), new LZMA2Options()))) {
+            for (String name : new String[]{"bin/", "opt/"}) {
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setMode(040700);
+                tar.putArchiveEntry(entry);
+                tar.closeArchiveEntry();
+            }
+
+            TarArchiveEntry entry = new TarArchiveEntry("bin/tool");
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+        }
+
+        try (PackageExtractor extractor = new PackageExtractor()) {
+            extractor.extract(pkg, target);
+        }
+
+        assertEquals(Paths.get("usr/bin"), Files.readSymbolicLink(target.resolve("bin")));
+        assertTrue(Files.isRegularFile(target.resolve("usr/bin/tool")));
+        assertEquals("rwxr-xr-x", PosixFilePermissions.toString(Files.getPosixFilePermissions(target.resolve("usr/bin"))));
+
+        // A link leading outside of the root is replaced
+        assertTrue(Files.isDirectory(target.resolve("opt"), LinkOption.NOFOLLOW_LINKS));
+    }
+}
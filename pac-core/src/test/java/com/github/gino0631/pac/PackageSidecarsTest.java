@@ -0,0 +1,39 @@
+package com.github.gino0631.pac;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackageSidecarsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStaleFilesDeleted() throws Exception {
+        Path packageFile = folder.newFile("test-1.0-1-any.pkg.tar.xz").toPath();
+
+        PackageSidecars.write(packageFile, new BuildResult(0, "d41d8cd98f00b204e9800998ecf8427e",
+                        "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", new byte[1], new PackageIndex()),
+                Arrays.asList(PackageSidecars.SHA256_EXTENSION, PackageSidecars.MD5_EXTENSION));
+        assertTrue(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.SIGNATURE_EXTENSION)));
+        assertTrue(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.INDEX_EXTENSION)));
+        assertTrue(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.SHA256_EXTENSION)));
+        assertTrue(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.MD5_EXTENSION)));
+
+        PackageSidecars.write(packageFile, new BuildResult(0, "d41d8cd98f00b204e9800998ecf8427e",
+                        "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", null, null),
+                Collections.singletonList(PackageSidecars.MD5_EXTENSION));
+        assertFalse(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.SIGNATURE_EXTENSION)));
+        assertFalse(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.INDEX_EXTENSION)));
+        assertFalse(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.SHA256_EXTENSION)));
+        assertTrue(Files.exists(PackageSidecars.getPath(packageFile, PackageSidecars.MD5_EXTENSION)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.gino0631.pac;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.openpgp.PGPEncryptedData;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPKeyRingGenerator;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.bc.BcPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentVerifierBuilderProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyPair;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyEncryptorBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackageSignerTest {
+    private static final char[] PASSPHRASE = "secret".toCharArray();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSignature() throws Exception {
+        PGPSecretKeyRing secretKeyRing = generateKeyRing();
+        Path keyRingFile = writeKeyRing(secretKeyRing);
+
+        Path root = folder.newFolder("root").toPath();
+        Files.createDirectories(root.resolve("opt/test"));
+        Files.write(root.resolve("opt/test/file.txt"), "Hello".getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream pkg = new ByteArrayOutputStream();
+        BuildResult result = new PackageBuilder()
+                .setRootDir(root)
+                .setPkgName("test")
+                .setPkgVer("1.0")
+                .setPkgRel("1")
+                .setArch("any")
+                .setSigner(PackageSigner.fromKeyRing(keyRingFile, "john@example.com", PASSPHRASE))
+                .build(pkg);
+
+        assertNotNull(result.getSignature());
+
+        PGPSignature signature = ((PGPSignatureList) new BcPGPObjectFactory(result.getSignature()).nextObject()).get(0);
+        signature.init(new BcPGPContentVerifierBuilderProvider(), secretKeyRing.getPublicKey());
+        signature.update(pkg.toByteArray());
+        assertTrue(signature.verify());
+    }
+
+    @Test(expected = IOException.class)
+    public void testKeyNotFound() throws Exception {
+        PackageSigner.fromKeyRing(writeKeyRing(generateKeyRing()), "jane@example.com", PASSPHRASE);
+    }
+
+    private static PGPSecretKeyRing generateKeyRing() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        PGPKeyPair keyPair = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, kpg.generateKeyPair(), new Date());
+        PGPDigestCalculator sha1 = new JcaPGPDigestCalculatorProviderBuilder().build().get(HashAlgorithmTags.SHA1);
+
+        return new PGPKeyRingGenerator(PGPSignature.POSITIVE_CERTIFICATION, keyPair,
+                "John Doe <john@example.com>", sha1, null, null,
+                new JcaPGPContentSignerBuilder(keyPair.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA256),
+                new JcePBESecretKeyEncryptorBuilder(PGPEncryptedData.AES_256, sha1).build(PASSPHRASE))
+                .generateSecretKeyRing();
+    }
+
+    private Path writeKeyRing(PGPSecretKeyRing secretKeyRing) throws Exception {
+        Path keyRingFile = folder.newFile().toPath();
+        try (OutputStream os = Files.newOutputStream(keyRingFile)) {
+            secretKeyRing.encode(os);
+        }
+
+        return keyRingFile;
+    }
+}
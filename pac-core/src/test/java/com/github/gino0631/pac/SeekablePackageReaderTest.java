@@ -0,0 +1,73 @@
+package com.github.gino0631.pac;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SeekablePackageReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRead() throws Exception {
+        Path root = folder.newFolder("root").toPath();
+        Path dir = Files.createDirectories(root.resolve("opt/test"));
+        for (int i = 0; i < 4; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < 2000; j++) {
+                text.append("file ").append(i).append(" line ").append(j).append('\n');
+            }
+            Files.write(dir.resolve(i + ".txt"), text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        Path pkg = folder.getRoot().toPath().resolve("test.pkg.tar.xz");
+        BuildResult result;
+        try (OutputStream os = Files.newOutputStream(pkg)) {
+            result = PackageBuilderTest.newBuilder(root).setBlockSize(16384).build(os);
+        }
+
+        // Metadata, then a block per file
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(pkg.toFile()))) {
+            assertEquals(5, xz.getBlockCount());
+            assertEquals(xz.getBlockCompPos(0), result.getIndex().get(".PKGINFO").getBlockOffset());
+            assertEquals(xz.getBlockCompPos(2), result.getIndex().get("opt/test/1.txt").getBlockOffset());
+            assertEquals(xz.getBlockPos(2), result.getIndex().get("opt/test/1.txt").getBlockPosition());
+        }
+
+        ByteArrayOutputStream indexOs = new ByteArrayOutputStream();
+        result.getIndex().writeTo(indexOs);
+        PackageIndex index = PackageIndex.readFrom(new ByteArrayInputStream(indexOs.toByteArray()));
+
+        try (SeekablePackageReader reader = new SeekablePackageReader(pkg, index)) {
+            assertArrayEquals(Files.readAllBytes(dir.resolve("2.txt")), readAll(reader.getInputStream("opt/test/2.txt")));
+            assertArrayEquals(Files.readAllBytes(dir.resolve("0.txt")), readAll(reader.getInputStream("opt/test/0.txt")));
+            assertNull(reader.getInputStream("opt/test/4.txt"));
+            assertTrue(new String(readAll(reader.getInputStream(".PKGINFO")), StandardCharsets.UTF_8).contains("pkgname = "));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) >= 0; ) {
+            os.write(buffer, 0, n);
+        }
+
+        return os.toByteArray();
+    }
+}
@@ -0,0 +1,406 @@
+package com.github.gino0631.pac.maven;
+
+import com.github.gino0631.pac.BuildResult;
+import com.github.gino0631.pac.FilePermissions;
+import com.github.gino0631.pac.PackageBuilder;
+import com.github.gino0631.pac.PackageSidecars;
+import com.github.gino0631.pac.PackageSigner;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Provider;
+import java.security.Security;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Map;
+
+public abstract class AbstractPackageMojo extends AbstractMojo {
+    /**
+     * The directory containing payload to install.
+     */
+    @Parameter
+    private File root;
+
+    /**
+     * Additional entries to be included in the package.
+     */
+    @Parameter
+    private List<Entry> entries;
+
+    /**
+     * A special install script that is to be included in the package.
+     */
+    @Parameter
+    private File installScript;
+
+    /**
+     * The directory where the package will be created.
+     */
+    @Parameter(defaultValue = "${project.build.directory}", required = true)
+    private File buildDirectory;
+
+    /**
+     * Output file name.
+     */
+    @Parameter
+    private String outputFile;
+
+    /**
+     * The name of the package.
+     * <p>
+     * Valid characters are alphanumerics, and any of the following characters: {@code @ . _ + -}.
+     * Additionally, names are not allowed to start with hyphens or dots.
+     */
+    @Parameter(defaultValue = "${project.artifactId}", required = true)
+    private String packageName;
+
+    /**
+     * The version of the package (e.g., 2.7.1). The variable is not allowed to contain colons or hyphens.
+     */
+    @Parameter(defaultValue = "${project.artifact.selectedVersion.majorVersion}" +
+            ".${project.artifact.selectedVersion.minorVersion}" +
+            ".${project.artifact.selectedVersion.incrementalVersion}", required = true)
+    private String packageVersion;
+
+    /**
+     * The release number specific to the Arch Linux release. The variable is not allowed to contain hyphens.
+     */
+    @Parameter(defaultValue = "1", required = true)
+    private String releaseNumber;
+
+    /**
+     * Defines on which architecture the given package is available.
+     */
+    @Parameter(defaultValue = "any", required = true)
+    private String architecture;
+
+    /**
+     * A brief description of the package and its functionality. Try to keep the description to one line of text and to not use the package’s name.
+     */
+    @Parameter
+    private String description;
+
+    /**
+     * A URL that is associated with the software being packaged.
+     */
+    @Parameter(defaultValue = "${project.organization.url}")
+    private URL url;
+
+    /**
+     * The builder of the package. It is recommended to change this to your name and email address, e.g., {@code John Doe <john@example.com>}.
+     */
+    @Parameter(defaultValue = "${project.organization.name}")
+    private String packager;
+
+    /**
+     * The license(s) that apply to the package.
+     */
+    @Parameter
+    private List<String> licenses;
+
+    /**
+     * A list of packages this package depends on to run.
+     */
+    @Parameter
+    private List<String> depends;
+
+    /**
+     * A list of optional packages that provide additional features.
+     */
+    @Parameter
+    private List<String> optDepends;
+
+    /**
+     * File permissions.
+     */
+    @Parameter
+    private List<PermissionSet> permissionSets;
+
+    /**
+     * XZ compression preset, from 0 (fastest) to 9 (best compression).
+     */
+    @Parameter(defaultValue = "6")
+    private int compressionPreset;
+
+    /**
+     * Whether to write files which are compressed already (like JARs or PNGs) to a separate XZ block using the fastest preset,
+     * instead of spending CPU time on trying to compress them again.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean adaptiveCompression;
+
+    /**
+     * If set, makes the package seekable by splitting it into XZ blocks of at least this uncompressed size (in bytes),
+     * ending at entry boundaries. An index of entries is written next to the package, with {@code .idx} appended to its name.
+     */
+    @Parameter(defaultValue = "0")
+    private long blockSize;
+
+    /**
+     * Whether to read, hash and compress files on separate threads at the same time, reading every file in full only once
+     * (with {@code adaptiveCompression}, a sample of each file is still read beforehand, to classify it).
+     * The compressed payload is kept in a temporary file until the package metadata is written.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean pipelined;
+
+    /**
+     * The order of payload entries in the package: {@code PATH} (lexical order of paths), or {@code EXTENSION}
+     * (files clustered by extension and name, which usually improves compression).
+     */
+    @Parameter(defaultValue = "PATH")
+    private PackageBuilder.EntryOrder entryOrder;
+
+    /**
+     * Digests of file contents to include in the package metadata: {@code MD5} and/or {@code SHA256}.
+     * Both are included by default, while recent versions of pacman need only {@code SHA256}.
+     */
+    @Parameter
+    private List<PackageBuilder.Digest> digests;
+
+    /**
+     * The name of the security provider to compute digests with, e.g., one providing hardware-accelerated implementations.
+     * The provider must be registered in the JVM.
+     */
+    @Parameter
+    private String digestProvider;
+
+    /**
+     * Secret key ring file (e.g., exported with {@code gpg --export-secret-keys}) containing the key to sign the package with.
+     * If specified, a detached signature is written next to the package, with {@code .sig} appended to its name.
+     */
+    @Parameter(property = "pac.sign.keyRing")
+    private File signKeyRing;
+
+    /**
+     * The ID, fingerprint or user ID of the signing key. If not specified, the first signing key in the key ring is used.
+     */
+    @Parameter(property = "pac.sign.keyId")
+    private String signKeyId;
+
+    /**
+     * The passphrase protecting the signing key.
+     */
+    @Parameter(property = "pac.sign.passphrase")
+    private String signPassphrase;
+
+    /**
+     * Checksums to write next to the package, in the format of {@code sha256sum} and {@code md5sum} utilities.
+     * Supported values are {@code sha256} and {@code md5}; the file name is the package name with the algorithm appended.
+     */
+    @Parameter
+    private List<String> checksums;
+
+    private PackageSigner signer;
+
+    @FunctionalInterface
+    protected interface PackageWriter {
+        BuildResult write(OutputStream outputStream) throws IOException;
+    }
+
+    protected PackageBuilder createPackageBuilder() throws IOException, MojoExecutionException {
+        return createPackageBuilder(new PackageDefinition());
+    }
+
+    /**
+     * Creates a builder of the package, taking the parameters which are not specified in the definition from this goal.
+     */
+    protected PackageBuilder createPackageBuilder(PackageDefinition definition) throws IOException, MojoExecutionException {
+        try {
+            return newPackageBuilder(definition);
+
+        } catch (IllegalArgumentException e) {
+            // Values rejected by the builder
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    private PackageBuilder newPackageBuilder(PackageDefinition definition) throws IOException, MojoExecutionException {
+        File root = or(definition.getRoot(), this.root);
+        if (root == null) {
+            throw new MojoExecutionException("Root directory must be specified");
+        }
+
+        if (checksums != null) {
+            for (String algorithm : checksums) {
+                if (!PackageSidecars.isSupportedChecksum(algorithm)) {
+                    throw new MojoExecutionException("Unsupported checksum algorithm " + algorithm);
+                }
+            }
+        }
+
+        Provider provider = null;
+        if (digestProvider != null) {
+            provider = Security.getProvider(digestProvider);
+            if (provider == null) {
+                throw new MojoExecutionException(MessageFormat.format("Security provider {0} not found", digestProvider));
+            }
+        }
+
+        URL url = or(definition.getUrl(), this.url);
+        PackageBuilder pkgBuilder = new PackageBuilder()
+                .setRootDir(root.toPath())
+                .setPkgName(or(definition.getPackageName(), packageName))
+                .setPkgVer(or(definition.getPackageVersion(), packageVersion))
+                .setPkgRel(or(definition.getReleaseNumber(), releaseNumber))
+                .setPkgDesc(or(definition.getDescription(), description))
+                .setUrl((url != null) ? url.toString() : null)
+                .setPackager(or(definition.getPackager(), packager))
+                .setArch(or(definition.getArchitecture(), architecture))
+                .setCompressionPreset(compressionPreset)
+                .setAdaptiveCompression(adaptiveCompression)
+                .setBlockSize(blockSize)
+                .setPipelined(pipelined)
+                .setEntryOrder(entryOrder)
+                .addLicenses(or(definition.getLicenses(), licenses))
+                .addDepends(or(definition.getDepends(), depends))
+                .addOptDepends(or(definition.getOptDepends(), optDepends));
+
+        List<PermissionSet> permissionSets = or(definition.getPermissionSets(), this.permissionSets);
+        if (permissionSets != null) {
+            pkgBuilder.setPermissionSupplier((name, isDirectory) -> {
+                int mode = isDirectory ? FilePermissions.DEFAULT_DIRECTORY_MODE : FilePermissions.DEFAULT_FILE_MODE;
+                int uid = FilePermissions.DEFAULT_UID;
+                int gid = FilePermissions.DEFAULT_GID;
+
+                for (PermissionSet p : permissionSets) {
+                    if (p.matches(name)) {
+                        mode = notNull(isDirectory ? p.getDirectoryMode() : p.getFileMode(), mode);
+                        uid = notNull(p.getUid(), uid);
+                        gid = notNull(p.getGid(), gid);
+                    }
+                }
+
+                return new FilePermissions(mode, uid, gid);
+            });
+        }
+
+        List<Entry> entries = or(definition.getEntries(), this.entries);
+        if (entries != null) {
+            for (Entry e : entries) {
+                if (e instanceof Symlink) {
+                    Symlink symlink = (Symlink) e;
+                    pkgBuilder.addSymlink(symlink.getName(), symlink.getLinkTo());
+                }
+            }
+        }
+
+        File installScript = or(definition.getInstallScript(), this.installScript);
+        if (installScript != null) {
+            pkgBuilder.setInstallScript(installScript.toPath());
+        }
+
+        if (digests != null) {
+            pkgBuilder.setDigests(digests);
+        }
+
+        if (provider != null) {
+            pkgBuilder.setDigestProvider(provider);
+        }
+
+        if (signKeyRing != null) {
+            pkgBuilder.setSigner(getSigner());
+        }
+
+        return pkgBuilder;
+    }
+
+    /**
+     * Returns the signer, loading the key ring on the first call only, so that it is shared by all packages of the goal.
+     */
+    private PackageSigner getSigner() throws IOException {
+        if (signer == null) {
+            signer = PackageSigner.fromKeyRing(signKeyRing.toPath(), signKeyId,
+                    (signPassphrase != null) ? signPassphrase.toCharArray() : null);
+        }
+
+        return signer;
+    }
+
+    protected File getRoot() throws MojoExecutionException {
+        if (root == null) {
+            throw new MojoExecutionException("Root directory must be specified");
+        }
+
+        return root;
+    }
+
+    protected File getInstallScript() {
+        return installScript;
+    }
+
+    protected boolean isPipelined() {
+        return pipelined;
+    }
+
+    protected Path getOutputPath() {
+        return (outputFile != null) ? buildDirectory.toPath().resolve(outputFile) : getOutputPath(new PackageDefinition());
+    }
+
+    /**
+     * Returns the path of the package file. Unless specified in the definition, the file name is derived from the package
+     * name, version, release number and architecture.
+     */
+    protected Path getOutputPath(PackageDefinition definition) {
+        String outputFile = definition.getOutputFile();
+        if (outputFile == null) {
+            outputFile = or(definition.getPackageName(), packageName)
+                    + "-" + or(definition.getPackageVersion(), packageVersion)
+                    + "-" + or(definition.getReleaseNumber(), releaseNumber)
+                    + "-" + or(definition.getArchitecture(), architecture) + ".pkg.tar.xz";
+        }
+
+        return buildDirectory.toPath().resolve(outputFile);
+    }
+
+    /**
+     * Writes the package, and its signature, checksums and index if requested.
+     *
+     * @return written signature, checksum and index files, by extension
+     */
+    protected Map<String, Path> writePackage(Path outputPath, PackageWriter writer) throws IOException {
+        Files.createDirectories(outputPath.getParent());
+        boolean succeeded = false;
+
+        try {
+            BuildResult result;
+            try (OutputStream os = Files.newOutputStream(outputPath)) {
+                result = writer.write(os);
+            }
+
+            Map<String, Path> sidecars = writeSidecars(outputPath, result);
+            succeeded = true;
+
+            return sidecars;
+
+        } finally {
+            if (!succeeded) {
+                Files.deleteIfExists(outputPath);
+            }
+        }
+    }
+
+    /**
+     * Writes the signature, checksums and index of a package which has been written already.
+     *
+     * @return written signature, checksum and index files, by extension
+     */
+    protected Map<String, Path> writeSidecars(Path outputPath, BuildResult result) throws IOException {
+        return PackageSidecars.write(outputPath, result, checksums);
+    }
+
+    private static <T> T or(T value, T defaultValue) {
+        return (value != null) ? value : defaultValue;
+    }
+
+    private static int notNull(Integer value, int defaultValue) {
+        return (value != null) ? value : defaultValue;
+    }
+}
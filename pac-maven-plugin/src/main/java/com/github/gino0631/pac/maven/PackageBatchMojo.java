@@ -0,0 +1,83 @@
+package com.github.gino0631.pac.maven;
+
+import com.github.gino0631.pac.PackageBatchBuilder;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds many packages at once, on a shared pool of threads, starting with the largest ones. Parameters of the goal
+ * (except {@code root} and {@code outputFile}) serve as defaults for all the packages.
+ */
+@Mojo(name = "package-batch", aggregator = true, threadSafe = true)
+public class PackageBatchMojo extends AbstractPackageMojo {
+    /**
+     * Definitions of the packages to build.
+     */
+    @Parameter(required = true)
+    private List<PackageDefinition> packages;
+
+    /**
+     * The maximum number of packages to build at the same time. Defaults to the number of available processors.
+     */
+    @Parameter(property = "pac.threads", defaultValue = "0")
+    private int threads;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            // Validate all definitions before loading anything, so that a clash is reported by the definitions involved
+            Map<Path, Integer> outputPaths = new LinkedHashMap<>();
+            for (int i = 0; i < packages.size(); i++) {
+                PackageDefinition definition = packages.get(i);
+                if (definition.getRoot() == null) {
+                    throw new MojoExecutionException(MessageFormat.format("Root directory must be specified for package #{0}", i + 1));
+                }
+
+                Path outputPath = getOutputPath(definition).toAbsolutePath().normalize();
+                Integer other = outputPaths.putIfAbsent(outputPath, i);
+                if (other != null) {
+                    throw new MojoExecutionException(MessageFormat.format("Packages #{0} and #{1} have the same output file {2}",
+                            other + 1, i + 1, outputPath));
+                }
+            }
+
+            PackageBatchBuilder batchBuilder = (threads > 0) ? new PackageBatchBuilder(threads) : new PackageBatchBuilder();
+            int i = 0;
+            for (Path outputPath : outputPaths.keySet()) {
+                batchBuilder.add(outputPath.getFileName().toString(), createPackageBuilder(packages.get(i++)), outputPath);
+            }
+
+            int failures = 0;
+
+            for (PackageBatchBuilder.Result result : batchBuilder.build()) {
+                if (result.getFailure() == null) {
+                    writeSidecars(result.getOutputFile(), result.getBuildResult());
+
+                    getLog().info(MessageFormat.format("Built {0} in {1} ms ({2} bytes of payload, {3} bytes compressed)",
+                            result.getName(), result.getElapsedTime().toMillis(),
+                            result.getInputSize(), result.getBuildResult().getSize()));
+
+                } else {
+                    getLog().error(MessageFormat.format("Error building {0}", result.getName()), result.getFailure());
+                    failures++;
+                }
+            }
+
+            if (failures > 0) {
+                throw new MojoExecutionException(MessageFormat.format("{0} of {1} packages failed to build", failures, packages.size()));
+            }
+
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error building packages", e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.gino0631.pac.maven;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Definition of a package built by the {@code package-batch} goal. Parameters which are not specified are taken from
+ * the goal configuration, so the properties shared by all packages need to be specified only once.
+ */
+public class PackageDefinition {
+    @Parameter
+    private File root;
+
+    @Parameter
+    private List<Entry> entries;
+
+    @Parameter
+    private File installScript;
+
+    @Parameter
+    private String outputFile;
+
+    @Parameter
+    private String packageName;
+
+    @Parameter
+    private String packageVersion;
+
+    @Parameter
+    private String releaseNumber;
+
+    @Parameter
+    private String architecture;
+
+    @Parameter
+    private String description;
+
+    @Parameter
+    private URL url;
+
+    @Parameter
+    private String packager;
+
+    @Parameter
+    private List<String> licenses;
+
+    @Parameter
+    private List<String> depends;
+
+    @Parameter
+    private List<String> optDepends;
+
+    @Parameter
+    private List<PermissionSet> permissionSets;
+
+    public File getRoot() {
+        return root;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public File getInstallScript() {
+        return installScript;
+    }
+
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getPackageVersion() {
+        return packageVersion;
+    }
+
+    public String getReleaseNumber() {
+        return releaseNumber;
+    }
+
+    public String getArchitecture() {
+        return architecture;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public String getPackager() {
+        return packager;
+    }
+
+    public List<String> getLicenses() {
+        return licenses;
+    }
+
+    public List<String> getDepends() {
+        return depends;
+    }
+
+    public List<String> getOptDepends() {
+        return optDepends;
+    }
+
+    public List<PermissionSet> getPermissionSets() {
+        return permissionSets;
+    }
+}
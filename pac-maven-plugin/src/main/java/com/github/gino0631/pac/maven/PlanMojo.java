@@ -0,0 +1,63 @@
+package com.github.gino0631.pac.maven;
+
+import com.github.gino0631.pac.PackageBuilder;
+import com.github.gino0631.pac.PackagePlan;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.Collections;
+
+/**
+ * Checks the package configuration and plans the package contents without building it. Instead of the package,
+ * its {@code .PKGINFO}, uncompressed {@code .MTREE}, and a listing of files are written, with {@code .PKGINFO},
+ * {@code .MTREE} and {@code .files} appended to the package file name.
+ * The listing contains type, mode, user ID, group ID, size, SHA-256 digest, name and link target of each entry, separated by tabs.
+ */
+@Mojo(name = "plan")
+public class PlanMojo extends AbstractPackageMojo {
+    private static final String PKGINFO_EXTENSION = "PKGINFO";
+    private static final String MTREE_EXTENSION = "MTREE";
+    private static final String LISTING_EXTENSION = "files";
+
+    /**
+     * Whether to compute digests of files (as configured with {@code digests}). Without them, planning takes about as long
+     * as listing the payload directory.
+     */
+    @Parameter(property = "pac.plan.digests", defaultValue = "false")
+    private boolean planDigests;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            PackageBuilder pkgBuilder = createPackageBuilder();
+            if (!planDigests) {
+                pkgBuilder.setDigests(Collections.emptySet());
+            }
+
+            PackagePlan plan = pkgBuilder.plan();
+            Path outputPath = getOutputPath();
+            Files.createDirectories(outputPath.getParent());
+
+            Files.write(outputPath.resolveSibling(outputPath.getFileName() + "." + PKGINFO_EXTENSION), plan.getPkginfo());
+            Files.write(outputPath.resolveSibling(outputPath.getFileName() + "." + MTREE_EXTENSION), plan.getMtree());
+            try (Writer wr = Files.newBufferedWriter(outputPath.resolveSibling(outputPath.getFileName() + "." + LISTING_EXTENSION),
+                    StandardCharsets.UTF_8)) {
+                plan.writeListing(wr);
+            }
+
+            getLog().info(MessageFormat.format("Planned {0}: {1} entries, {2} bytes installed",
+                    outputPath.getFileName(), plan.getEntries().size(), Long.toString(plan.getInstalledSize())));
+
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error planning package", e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.gino0631.pac.maven;
+
+import com.github.gino0631.pac.IncrementalPackageBuilder;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds the package, and then keeps watching the payload directory, rebuilding the package whenever its contents change.
+ * Only changed files are hashed and compressed again, so rebuilds are fast. The goal runs until interrupted.
+ * <p>
+ * The package is split into blocks of at most {@code blockSize} bytes (8 MiB by default), and its index is written
+ * if {@code blockSize} is set. Pipelined building is not supported.
+ */
+@Mojo(name = "watch")
+public class WatchMojo extends AbstractPackageMojo {
+    /**
+     * The time to wait for further changes before rebuilding the package, in milliseconds.
+     */
+    @Parameter(property = "pac.watch.quietPeriod", defaultValue = "300")
+    private long quietPeriod;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (isPipelined()) {
+            throw new MojoExecutionException("Pipelined building is not supported by the watch goal, as only changed files are read");
+        }
+
+        try (WatchService watchService = getRoot().toPath().getFileSystem().newWatchService()) {
+            IncrementalPackageBuilder pkgBuilder = new IncrementalPackageBuilder(createPackageBuilder());
+            Path outputPath = getOutputPath();
+
+            registerAll(watchService, getRoot().toPath());
+            if (getInstallScript() != null) {
+                getInstallScript().toPath().toAbsolutePath().getParent().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+
+            build(pkgBuilder, outputPath);
+            getLog().info(MessageFormat.format("Watching {0} for changes", getRoot()));
+
+            while (true) {
+                WatchKey key = watchService.take();
+
+                // Wait for the changes to settle down
+                do {
+                    handleEvents(watchService, key);
+                } while ((key = watchService.poll(quietPeriod, TimeUnit.MILLISECONDS)) != null);
+
+                build(pkgBuilder, outputPath);
+            }
+
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error watching for changes", e);
+        }
+    }
+
+    private void build(IncrementalPackageBuilder pkgBuilder, Path outputPath) {
+        long start = System.nanoTime();
+
+        try {
+            writePackage(outputPath, pkgBuilder::build);
+
+            getLog().info(MessageFormat.format("Built {0} in {1} ms ({2} entries changed, {3} of {4} blocks compressed)",
+                    outputPath.getFileName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    pkgBuilder.getChangedEntryCount(), pkgBuilder.getCompressedBlockCount(), pkgBuilder.getBlockCount()));
+
+        } catch (IOException | RuntimeException e) {
+            // Keep watching, as the next change might fix the problem
+            getLog().error("Error building package", e);
+        }
+    }
+
+    private void handleEvents(WatchService watchService, WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                Path path = dir.resolve((Path) event.context());
+                if (Files.isDirectory(path)) {
+                    registerAll(watchService, path);
+                }
+            }
+        }
+
+        key.reset();
+    }
+
+    private static void registerAll(WatchService watchService, Path root) throws IOException {
+        List<Path> dirs;
+        try (Stream<Path> paths = Files.walk(root)) {
+            dirs = paths.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+
+        for (Path dir : dirs) {
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+}
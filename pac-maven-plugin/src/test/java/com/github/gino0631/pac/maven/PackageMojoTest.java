@@ -1,13 +1,22 @@
 package com.github.gino0631.pac.maven;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.testing.MojoRule;
 import org.junit.Rule;
 import org.junit.Test;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class PackageMojoTest {
     @Rule
@@ -16,8 +25,45 @@ public class PackageMojoTest {
 
     @Test
     public void test() throws Exception {
-        Mojo mojo = rule.lookupConfiguredMojo(new File(getClass().getResource("/test-project").toURI()), "package");
+        File project = new File(getClass().getResource("/test-project").toURI());
+        Mojo mojo = rule.lookupConfiguredMojo(project, "package");
         assertNotNull(mojo);
         mojo.execute();
+
+        Path pkg = project.toPath().resolve("target/pac-maven-plugin-test-1.0.0-1-any.pkg.tar.xz");
+        Path sha256 = pkg.resolveSibling(pkg.getFileName() + ".sha256");
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(pkg)) + "  " + pkg.getFileName() + "\n",
+                new String(Files.readAllBytes(sha256), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInvalidConfiguration() throws Exception {
+        File project = new File(getClass().getResource("/test-project").toURI());
+
+        Mojo mojo = rule.lookupConfiguredMojo(project, "package");
+        rule.setVariableValueToObject(mojo, "digestProvider", "NoSuchProvider");
+        assertThrows(MojoExecutionException.class, mojo::execute);
+
+        mojo = rule.lookupConfiguredMojo(project, "package");
+        rule.setVariableValueToObject(mojo, "digestProvider", "SunJCE");    // does not provide message digests
+        assertThrows(MojoExecutionException.class, mojo::execute);
+
+        mojo = rule.lookupConfiguredMojo(project, "package");
+        rule.setVariableValueToObject(mojo, "compressionPreset", 10);
+        assertThrows(MojoExecutionException.class, mojo::execute);
+    }
+
+    @Test
+    public void testDuplicateOutputFiles() throws Exception {
+        File project = new File(getClass().getResource("/test-project").toURI());
+        PackageDefinition first = new PackageDefinition();
+        rule.setVariableValueToObject(first, "root", new File(project, "root"));
+        PackageDefinition second = new PackageDefinition();
+        rule.setVariableValueToObject(second, "root", new File(project, "root"));
+
+        Mojo mojo = rule.lookupConfiguredMojo(project, "package-batch");
+        rule.setVariableValueToObject(mojo, "packages", Arrays.asList(first, second));
+        MojoExecutionException e = assertThrows(MojoExecutionException.class, mojo::execute);
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Packages #1 and #2 have the same output file"));
     }
 }